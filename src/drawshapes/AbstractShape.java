@@ -18,6 +18,7 @@ public abstract class AbstractShape implements IShape
     protected boolean selected;
     protected Color color;
     protected Point anchorPoint;
+    protected int version;
     
     protected AbstractShape(Point anchor) {
         this.anchorPoint = anchor;
@@ -67,7 +68,8 @@ public abstract class AbstractShape implements IShape
      */
     @Override
     public void setColor(Color color) {
-        this.color = color;
+        this.color = Palette.intern(color);
+        version++;
     }
 
     /* (non-Javadoc)
@@ -83,23 +85,44 @@ public abstract class AbstractShape implements IShape
      */
     @Override
     public void setSelected(boolean b) {
+        if (this.selected != b) {
+            version++;
+        }
         this.selected = b;
     }
     
+    @Override
+    public int getVersion() {
+        return this.version;
+    }
+
+    /**
+     * The Color this shape should be drawn in, which is darker when the
+     * shape is selected. The darker color comes from the shared Palette,
+     * so drawing a selected shape doesn't allocate a new Color every frame.
+     * @return
+     */
+    protected Color drawAwtColor() {
+        return selected ? Palette.darker(this.color) : this.color;
+    }
+
+    /**
+     * The packed ARGB color this shape should be drawn in, which is
+     * darker when the shape is selected.
+     * @return
+     */
+    protected int drawColor() {
+        int argb = this.color.getRGB();
+        return selected ? Util.darker(argb) : argb;
+    }
+    
     @Override
     public Point getAnchorPoint() {
         return this.anchorPoint;
     }
     
     static String colorToString(Color color) {
-        if (color == Color.RED) {
-            return "RED";
-        } else if (color == Color.BLUE) {
-            return "BLUE";
-        }
-        else if(color == Color.YELLOW) return "YELLOW";
-        else if (color == Color.GREEN) return "GREEN";
-        throw new UnsupportedOperationException("Unexpected color: "+color);
+        return Palette.toString(color);
     }
 
     @Override
@@ -107,6 +130,7 @@ public abstract class AbstractShape implements IShape
     {
         anchorPoint.translate(x, y);
         boundingBox.move(x, y);
+        version++;
 
     }
 
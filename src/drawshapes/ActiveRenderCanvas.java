@@ -0,0 +1,217 @@
+package drawshapes;
+
+import java.awt.Canvas;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.image.BufferStrategy;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Canvas used for the optional active rendering mode.
+ *
+ * Instead of waiting for Swing to call paint(), a dedicated render
+ * thread draws into a page-flipped BufferStrategy, at most at a fixed
+ * rate, and only when there's something new to draw: a snapshot was
+ * published, the window needs repainting, or an interaction just ended
+ * and the last frame was drawn at a lower quality. Otherwise the thread
+ * is parked. The EDT never draws on the canvas; it publishes a snapshot
+ * of the scene with publish(), and the render thread picks up the
+ * latest one at the start of each frame. The handoff is a single
+ * AtomicReference, so neither side ever blocks on the other.
+ *
+ * DrawShapesPanel is still the default (passive) view.
+ */
+@SuppressWarnings("serial")
+public class ActiveRenderCanvas extends Canvas
+{
+    private static final int FRAMES_PER_SECOND = 60;
+    private static final long NANOS_PER_FRAME = 1_000_000_000L / FRAMES_PER_SECOND;
+
+    private int width;
+    private int height;
+    private RenderQuality quality;
+    // owned by the render thread
+    private final DisplayList displayList = new DisplayList();
+    private final Graphics2DRenderer renderer = new Graphics2DRenderer(null);
+    private final AtomicReference<Scene> snapshot = new AtomicReference<>(new Scene());
+    private volatile boolean running;
+    // set when a frame is wanted, cleared by the render thread as it starts one
+    private volatile boolean dirty = true;
+    private volatile Thread renderThread;
+
+    public ActiveRenderCanvas(int width, int height)
+    {
+        this(width, height, new RenderQuality());
+    }
+
+    public ActiveRenderCanvas(int width, int height, RenderQuality quality)
+    {
+        this.width = width;
+        this.height = height;
+        this.quality = quality;
+        setBackground(Color.WHITE);
+    }
+
+    /**
+     * Hand a new scene snapshot (see Scene.snapshot()) to the render
+     * thread. The snapshot must not be modified after it has been published.
+     *
+     * @param scene
+     */
+    public void publish(Scene scene) {
+        snapshot.set(scene);
+        requestFrame();
+    }
+
+    /// the window system wants the canvas redrawn; the render thread does that
+    @Override
+    public void paint(Graphics g) {
+        requestFrame();
+    }
+
+    /// no clearing here either, that's part of the frame
+    @Override
+    public void update(Graphics g) {
+        requestFrame();
+    }
+
+    /// have the render thread draw a frame, waking it if it's parked
+    private void requestFrame() {
+        dirty = true;
+        Thread t = renderThread;
+        if (t != null) {
+            LockSupport.unpark(t);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see java.awt.Canvas#addNotify()
+     */
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        // a BufferStrategy can only be created once the peer exists
+        createBufferStrategy(2);
+        start();
+    }
+
+    /* (non-Javadoc)
+     * @see java.awt.Component#removeNotify()
+     */
+    @Override
+    public void removeNotify() {
+        stop();
+        super.removeNotify();
+    }
+
+    private void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        renderThread = new Thread(this::renderLoop, "DrawShapes-render");
+        renderThread.setDaemon(true);
+        renderThread.start();
+    }
+
+    private void stop() {
+        running = false;
+        if (renderThread != null) {
+            renderThread.interrupt();
+            try {
+                renderThread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            renderThread = null;
+        }
+    }
+
+    /// render a frame when one is wanted, but no more than one per tick; in
+    /// between, park. If a frame runs long we drop the missed ticks instead
+    /// of trying to catch up.
+    private void renderLoop() {
+        long nextFrame = System.nanoTime();
+        while (running) {
+            long untilFullQuality = quality.nanosUntilFullQualityRepaint();
+            if (!dirty && untilFullQuality != 0) {
+                if (untilFullQuality < 0) {
+                    LockSupport.park(this);
+                } else {
+                    LockSupport.parkNanos(this, untilFullQuality);
+                }
+                nextFrame = Math.max(nextFrame, System.nanoTime());
+                continue;
+            }
+            dirty = false;
+            renderFrame();
+
+            nextFrame += NANOS_PER_FRAME;
+            long now = System.nanoTime();
+            if (now > nextFrame) {
+                nextFrame = now;
+                continue;
+            }
+            long sleep = nextFrame - now;
+            try {
+                Thread.sleep(sleep / 1_000_000L, (int)(sleep % 1_000_000L));
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void renderFrame() {
+        BufferStrategy strategy = getBufferStrategy();
+        if (strategy == null) {
+            return;
+        }
+        Scene current = snapshot.get();
+        do {
+            do {
+                Graphics g = strategy.getDrawGraphics();
+                try {
+                    g.setColor(getBackground());
+                    g.fillRect(0, 0, getWidth(), getHeight());
+                    long start = System.nanoTime();
+                    RenderQuality.Level level = quality.beginFrame(g);
+                    current.draw(g, level, displayList, renderer);
+                    quality.endFrame(System.nanoTime() - start);
+                } finally {
+                    g.dispose();
+                }
+            } while (strategy.contentsRestored());
+            strategy.show();
+        } while (strategy.contentsLost());
+    }
+
+    /* (non-Javadoc)
+     * @see java.awt.Component#getMinimumSize()
+     */
+    public Dimension getMinimumSize() {
+        return new Dimension(width, height);
+    }
+
+    /* (non-Javadoc)
+     * @see java.awt.Component#getMaximumSize()
+     */
+    public Dimension getMaximumSize() {
+        return new Dimension(width, height);
+    }
+
+    /* (non-Javadoc)
+     * @see java.awt.Component#getPreferredSize()
+     */
+    public Dimension getPreferredSize() {
+        return new Dimension(width, height);
+    }
+
+    /* (non-Javadoc)
+     * @see java.awt.Component#isFocusable()
+     */
+    public boolean isFocusable() {
+        return true;
+    }
+}
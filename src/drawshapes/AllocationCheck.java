@@ -0,0 +1,128 @@
+package drawshapes;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * Checks that painting a scene and dragging a selection rectangle over
+ * it allocate nothing once warmed up, so the garbage collector never
+ * has a reason to pause the window mid-drag.
+ *
+ * Each kind of shape gets its own scene, which is dragged over and
+ * drawn the way DrawShapesPanel does it, at full quality and at the
+ * level-of-detail setting. Allocation is measured per frame with the
+ * HotSpot ThreadMXBean, taking the least of a few runs so that a one-off
+ * such as the JIT recompiling something doesn't count, and the check
+ * fails (exit code 1) if a frame costs more than its budget.
+ *
+ * The budget is 0 for every kind of shape. Java2D's own fillOval() and
+ * fillPolygon() allocate on every call, so circles and polygons are
+ * filled as a reused path instead (see Graphics2DRenderer).
+ *
+ * <pre>
+ *   java drawshapes.AllocationCheck [shapes per scene]
+ * </pre>
+ */
+public class AllocationCheck
+{
+    private static final int WIDTH = 700;
+    private static final int HEIGHT = 600;
+    private static final int WARMUP_FRAMES = 5_000;
+    private static final int FRAMES = 1_000;
+    private static final int RUNS = 3;
+
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private final BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+    private final Graphics2D g = image.createGraphics();
+    private final RenderQuality quality = new RenderQuality();
+    private int failures;
+
+    /**
+     * Drag over and draw a scene of n shapes made by the factory, and
+     * report the bytes allocated per frame.
+     * @param name
+     * @param n
+     * @param shape makes shape i
+     */
+    void check(String name, int n, IntFunction<IShape> shape)
+    {
+        Scene scene = new Scene();
+        for (int i = 0; i < n; i++) {
+            scene.addShape(shape.apply(i));
+        }
+        scene.startDrag(new Point(0, 0));
+        for (int f = 0; f < WARMUP_FRAMES; f++) {
+            frame(scene, f);
+            scene.draw(g, RenderQuality.Level.LOD);
+        }
+        long id = Thread.currentThread().getId();
+        double full = Double.MAX_VALUE;
+        double lod = Double.MAX_VALUE;
+        for (int run = 0; run < RUNS; run++) {
+            long before = threads.getThreadAllocatedBytes(id);
+            for (int f = 0; f < FRAMES; f++) {
+                frame(scene, f);
+            }
+            full = Math.min(full, (threads.getThreadAllocatedBytes(id) - before) / (double) FRAMES);
+            before = threads.getThreadAllocatedBytes(id);
+            for (int f = 0; f < FRAMES; f++) {
+                scene.draw(g, RenderQuality.Level.LOD);
+            }
+            lod = Math.min(lod, (threads.getThreadAllocatedBytes(id) - before) / (double) FRAMES);
+        }
+        boolean ok = full == 0 && lod == 0;
+        if (!ok) {
+            failures++;
+        }
+        System.out.printf("%-10s drag+draw %10.1f  lod %10.1f  bytes/frame  %s\n",
+                name, full, lod, ok ? "ok" : "FAILED");
+    }
+
+    /// one drag event and one repaint, as DrawShapesPanel does it
+    private void frame(Scene scene, int f)
+    {
+        scene.updateSelectRect(f % WIDTH, f % HEIGHT);
+        RenderQuality.Level level = quality.beginFrame(g);
+        scene.draw(g, level);
+        quality.endFrame(1);
+    }
+
+    private static Point at(int i)
+    {
+        return new Point(i * 37 % WIDTH, i * 53 % HEIGHT);
+    }
+
+    /**
+     * @param args optionally the number of shapes in each scene
+     */
+    public static void main(String[] args)
+    {
+        System.setProperty("java.awt.headless", "true");
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        AllocationCheck check = new AllocationCheck();
+        if (!check.threads.isThreadAllocatedMemorySupported()) {
+            System.out.println("this JVM can't measure allocation per thread");
+            System.exit(2);
+        }
+        check.threads.setThreadAllocatedMemoryEnabled(true);
+
+        check.check("squares", n, i -> new Square(Color.BLUE, at(i).x, at(i).y, 10));
+        check.check("rectangles", n, i -> new Rectangle(at(i), 10, 20, Color.GREEN));
+        check.check("polygons", n, i -> new Polygon(new int[] {
+                at(i).x, at(i).y, at(i).x + 12, at(i).y + 4, at(i).x + 3, at(i).y + 15 }, Color.ORANGE));
+        check.check("text", n, i -> new TextLabel(at(i), "label " + i, 12, Color.BLACK));
+        check.check("groups", n, i -> new Group(List.of(new Square(Color.RED, at(i).x, at(i).y, 8),
+                new Rectangle(at(i + 1), 6, 9, Color.BLUE))));
+        check.check("circles", n, i -> new Circle(Color.RED, at(i), 10));
+
+        if (check.failures > 0) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package drawshapes;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The positions of the shapes of each type and of each color in one
+ * version of a scene, for answering "all circles" or "all RED" without
+ * testing every shape.
+ *
+ * Like SpatialIndex it's immutable and built in one pass for a given
+ * version of the shapes; the scene builds a new one when a query needs
+ * it after an edit. Each list of positions is in scene order.
+ */
+final class AttributeIndex
+{
+    private static final int[] NONE = new int[0];
+
+    private final long version;
+    private final int size;
+    private final Map<Integer, int[]> types;
+    private final Map<Integer, int[]> colors;
+
+    private AttributeIndex(long version, int size, Map<Integer, int[]> types, Map<Integer, int[]> colors)
+    {
+        this.version = version;
+        this.size = size;
+        this.types = types;
+        this.colors = colors;
+    }
+
+    static AttributeIndex build(List<IShape> shapes)
+    {
+        Map<Integer, IntList> types = new HashMap<>();
+        Map<Integer, IntList> colors = new HashMap<>();
+        for (int i = 0; i < shapes.size(); i++) {
+            IShape s = shapes.get(i);
+            types.computeIfAbsent((int) ShapeCodec.type(s), k -> new IntList()).add(i);
+            colors.computeIfAbsent(s.getColor().getRGB(), k -> new IntList()).add(i);
+        }
+        long version = shapes instanceof ShapeVector ? ((ShapeVector) shapes).version() : 0;
+        return new AttributeIndex(version, shapes.size(), toArrays(types), toArrays(colors));
+    }
+
+    private static Map<Integer, int[]> toArrays(Map<Integer, IntList> lists)
+    {
+        Map<Integer, int[]> arrays = new HashMap<>(lists.size() * 2);
+        lists.forEach((k, v) -> arrays.put(k, v.toArray()));
+        return arrays;
+    }
+
+    long version()
+    {
+        return version;
+    }
+
+    int size()
+    {
+        return size;
+    }
+
+    /// positions of the shapes of the given type (a ShapeCodec type byte); don't change it
+    int[] ofType(int type)
+    {
+        return types.getOrDefault(type, NONE);
+    }
+
+    /// positions of the shapes of the given color; don't change it
+    int[] ofColor(int argb)
+    {
+        return colors.getOrDefault(argb, NONE);
+    }
+}
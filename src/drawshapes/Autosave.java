@@ -0,0 +1,165 @@
+package drawshapes;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodic background autosave.
+ *
+ * Every interval, a background thread grabs the scene's current
+ * ShapeVector (an O(1) immutable snapshot, see Scene) and writes it in the
+ * normal scene file format to a timestamped file in the autosave
+ * directory, while the user keeps editing. If the scene version hasn't
+ * changed since the last autosave, nothing is written. Only the newest
+ * few autosave files are kept.
+ *
+ * The only time autosave can hold up the EDT is while it holds the
+ * scene's monitor to take the snapshot; that pause is measured along
+ * with how long each save takes.
+ */
+public class Autosave
+{
+    private final Scene scene;
+    private final File directory;
+    private final String prefix;
+    private final long intervalMillis;
+    private final int retention;
+    private final ScheduledExecutorService executor;
+
+    private volatile long lastSavedVersion = -1;
+    // metrics, written by the autosave thread only
+    private volatile int saves;
+    private volatile int skips;
+    private volatile long lastDurationNanos;
+    private volatile long lastPauseNanos;
+    private volatile long maxPauseNanos;
+
+    /**
+     * @param scene the scene to save
+     * @param directory where autosave files go; created if needed
+     * @param prefix start of every autosave file name
+     * @param intervalMillis time between autosaves
+     * @param retention how many autosave files to keep
+     */
+    public Autosave(Scene scene, File directory, String prefix, long intervalMillis, int retention)
+    {
+        this.scene = scene;
+        this.directory = directory;
+        this.prefix = prefix;
+        this.intervalMillis = intervalMillis;
+        this.retention = Math.max(1, retention);
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "DrawShapes-autosave");
+            t.setDaemon(true);
+            // never compete with the EDT for CPU
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+    }
+
+    public void start()
+    {
+        executor.scheduleWithFixedDelay(this::autosave, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop()
+    {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Save now if anything changed since the last autosave. Normally
+     * called on the autosave thread.
+     */
+    void autosave()
+    {
+        long start = System.nanoTime();
+        ShapeVector snapshot;
+        synchronized (scene) {
+            snapshot = scene.getShapes();
+        }
+        long pause = System.nanoTime() - start;
+        lastPauseNanos = pause;
+        maxPauseNanos = Math.max(maxPauseNanos, pause);
+
+        if (snapshot.version() == lastSavedVersion) {
+            skips++;
+            return;
+        }
+        try {
+            File file = write(snapshot);
+            lastSavedVersion = snapshot.version();
+            saves++;
+            lastDurationNanos = System.nanoTime() - start;
+            System.out.printf("autosaved %d shapes to %s in %.1f ms (EDT pause %.3f ms)\n",
+                    snapshot.size(), file.getName(), lastDurationNanos / 1e6, pause / 1e6);
+            prune();
+        } catch (IOException e) {
+            System.out.println("autosave failed: " + e);
+        }
+    }
+
+    private File write(ShapeVector snapshot) throws IOException
+    {
+        directory.mkdirs();
+        String stamp = new SimpleDateFormat("yyyyMMdd-HHmmss-SSS").format(new Date());
+        File file = new File(directory, prefix + "-" + stamp + ".scene");
+        File tmp = new File(directory, file.getName() + ".tmp");
+        try (Writer out = new BufferedWriter(new FileWriter(tmp), 1 << 16)) {
+            Scene.write(snapshot, out);
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return file;
+    }
+
+    /// delete all but the newest few autosave files
+    private void prune()
+    {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(prefix + "-") && name.endsWith(".scene"));
+        if (files == null || files.length <= retention) {
+            return;
+        }
+        // the timestamp in the name sorts oldest first
+        Arrays.sort(files, Comparator.comparing(File::getName));
+        for (int i = 0; i < files.length - retention; i++) {
+            files[i].delete();
+        }
+    }
+
+    public int getSaves()
+    {
+        return saves;
+    }
+
+    public int getSkips()
+    {
+        return skips;
+    }
+
+    public double getLastDurationMillis()
+    {
+        return lastDurationNanos / 1e6;
+    }
+
+    public double getLastPauseMillis()
+    {
+        return lastPauseNanos / 1e6;
+    }
+
+    public double getMaxPauseMillis()
+    {
+        return maxPauseNanos / 1e6;
+    }
+}
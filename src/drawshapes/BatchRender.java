@@ -0,0 +1,184 @@
+package drawshapes;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.imageio.ImageIO;
+
+/**
+ * Headless renderer from scene files to PNG images, for rendering
+ * thumbnails in bulk without opening the DrawShapes window.
+ *
+ * Each file is read, drawn with the shapes' own draw methods and encoded
+ * as PNG on one worker thread, so parsing and encoding of different
+ * files run in parallel. Images come from a fixed pool with one buffer
+ * per worker and are cleared and reused, so memory stays the same no
+ * matter how many files are rendered.
+ *
+ * <pre>
+ *   java drawshapes.BatchRender [-size 700x600] [-threads n] [-out dir] file.scene...
+ * </pre>
+ */
+public class BatchRender
+{
+    private final int width;
+    private final int height;
+    private final File outDir;
+    private final int threads;
+    private final BlockingQueue<BufferedImage> images;
+    private final AtomicInteger rendered = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+
+    /**
+     * @param width
+     * @param height
+     * @param outDir where the PNG files go, or null to put each next to its scene file
+     * @param threads number of worker threads, and of image buffers
+     */
+    public BatchRender(int width, int height, File outDir, int threads)
+    {
+        this.width = width;
+        this.height = height;
+        this.outDir = outDir;
+        this.threads = Math.max(1, threads);
+        this.images = new ArrayBlockingQueue<>(this.threads);
+        for (int i = 0; i < this.threads; i++) {
+            images.add(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB));
+        }
+    }
+
+    /**
+     * Render every file and wait for them all to finish.
+     * @param files
+     * @throws InterruptedException
+     */
+    public void renderAll(List<File> files) throws InterruptedException
+    {
+        // platform threads: the JDK we build against has no virtual threads,
+        // and the work is CPU bound anyway
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "DrawShapes-batch-render");
+            t.setDaemon(true);
+            return t;
+        });
+        for (File f : files) {
+            pool.execute(() -> renderOne(f));
+        }
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+    }
+
+    private void renderOne(File file)
+    {
+        BufferedImage image = null;
+        try {
+            image = images.take();
+            render(file, image);
+            ImageIO.write(image, "png", outputFile(file));
+            rendered.incrementAndGet();
+        } catch (IOException | RuntimeException e) {
+            // a truncated or invalid scene fails just that file
+            System.out.println("can't render " + file + ": " + e);
+            failed.incrementAndGet();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (image != null) {
+                images.add(image);
+            }
+        }
+    }
+
+    /**
+     * Draw the shapes of a scene file into the image, streaming them from
+     * the file. Images are decoded as they're reached, since there's no
+     * later frame to draw them in.
+     */
+    private void render(File file, BufferedImage image) throws IOException
+    {
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(ImageCache.WAIT_FOR_IMAGES, Boolean.TRUE);
+        try (SceneReader reader = new SceneReader(file)) {
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, width, height);
+            for (IShape s = reader.next(); s != null; s = reader.next()) {
+                s.draw(g);
+            }
+        } finally {
+            g.dispose();
+        }
+    }
+
+    private File outputFile(File scene)
+    {
+        String name = scene.getName();
+        int dot = name.lastIndexOf('.');
+        if (dot > 0) {
+            name = name.substring(0, dot);
+        }
+        File dir = outDir != null ? outDir : scene.getAbsoluteFile().getParentFile();
+        return new File(dir, name + ".png");
+    }
+
+    public int getRendered()
+    {
+        return rendered.get();
+    }
+
+    public int getFailed()
+    {
+        return failed.get();
+    }
+
+    /**
+     * @param args options, then the scene files to render
+     */
+    public static void main(String[] args) throws InterruptedException
+    {
+        System.setProperty("java.awt.headless", "true");
+        int width = 700;
+        int height = 600;
+        int threads = Runtime.getRuntime().availableProcessors();
+        File outDir = null;
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-size" -> {
+                    String[] wh = args[++i].split("x");
+                    width = Integer.parseInt(wh[0]);
+                    height = Integer.parseInt(wh[1]);
+                }
+                case "-threads" -> threads = Integer.parseInt(args[++i]);
+                case "-out" -> outDir = new File(args[++i]);
+                default -> files.add(new File(args[i]));
+            }
+        }
+        if (files.isEmpty()) {
+            System.out.println("usage: BatchRender [-size 700x600] [-threads n] [-out dir] file.scene...");
+            System.exit(2);
+        }
+        if (outDir != null) {
+            outDir.mkdirs();
+        }
+
+        BatchRender batch = new BatchRender(width, height, outDir, threads);
+        long start = System.nanoTime();
+        batch.renderAll(files);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("rendered %d files (%d failed) in %.2f s, %.1f files/s on %d threads\n",
+                batch.getRendered(), batch.getFailed(), seconds, batch.getRendered() / seconds, threads);
+        if (batch.getFailed() > 0) {
+            System.exit(1);
+        }
+    }
+}
@@ -11,14 +11,47 @@ class BoundingBox
     private Point[] corners = new Point[4];
     
     BoundingBox(int left, int right, int top, int bottom){
+        this.corners[0] = new Point();
+        this.corners[1] = new Point();
+        this.corners[2] = new Point();
+        this.corners[3] = new Point();
+        set(left, right, top, bottom);
+    }
+
+    /// reset the box in place, without allocating new corner points
+    void set(int left, int right, int top, int bottom){
         this.left = left;
         this.right = right;
         this.top = top;
         this.bottom = bottom;
-        this.corners[0] = new Point(left, top);
-        this.corners[1] = new Point(left, bottom);
-        this.corners[2] = new Point(right, bottom);
-        this.corners[3] = new Point(right, top);
+        this.corners[0].setLocation(left, top);
+        this.corners[1].setLocation(left, bottom);
+        this.corners[2].setLocation(right, bottom);
+        this.corners[3].setLocation(right, top);
+    }
+    
+    int getLeft() {
+        return left;
+    }
+
+    int getRight() {
+        return right;
+    }
+
+    int getTop() {
+        return top;
+    }
+
+    int getBottom() {
+        return bottom;
+    }
+
+    int getWidth() {
+        return right - left;
+    }
+
+    int getHeight() {
+        return bottom - top;
     }
     
     boolean contains(Point p){
@@ -30,6 +63,11 @@ class BoundingBox
         return String.format("left=%d right=%d top=%d bottom=%d", this.left, this.right, this.top, this.bottom);
     }
     
+    /// does this box overlap the given one, edges included?
+    boolean intersects(int left, int top, int right, int bottom){
+        return this.left <= right && this.right >= left && this.top <= bottom && this.bottom >= top;
+    }
+
     boolean intersects(BoundingBox other){
         // are any of my corners in their bounding box?
         for (Point corner : corners){
@@ -2,6 +2,7 @@ package drawshapes;
 
 import java.awt.Color;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
 import java.awt.Point;
 
 public class Circle extends AbstractShape
@@ -17,17 +18,27 @@ public class Circle extends AbstractShape
 
     @Override
     public void draw(Graphics g) {
-        if (isSelected()){
-            g.setColor(this.color.darker());
-        } else {
-            g.setColor(getColor());
+        g.setColor(drawAwtColor());
+        if (g instanceof Graphics2D g2) {
+            Graphics2DRenderer.fillOval(g2, anchorPoint.x - diameter/2, anchorPoint.y - diameter/2, diameter, diameter);
+            return;
         }
-        g.fillOval((int)getAnchorPoint().getX() - diameter/2,
-                (int)getAnchorPoint().getY() - diameter/2,
+        g.fillOval(anchorPoint.x - diameter/2,
+                anchorPoint.y - diameter/2,
                 diameter,
                 diameter);
     }
     
+    public int getDiameter() {
+        return diameter;
+    }
+
+    @Override
+    public void render(Renderer r) {
+        r.setColor(drawColor());
+        r.fillOval(anchorPoint.x - diameter/2, anchorPoint.y - diameter/2, diameter, diameter);
+    }
+    
     public String toString() {
         return String.format("CIRCLE %d %d %d %s %s", 
                 this.getAnchorPoint().x, 
@@ -41,17 +52,26 @@ public class Circle extends AbstractShape
     public void setAnchorPoint(Point p) {
         // TODO: move bounding box
         this.anchorPoint = p;
+        version++;
     }
 
     @Override
     public void scaleUp(double scale)
     {
-        diameter *= scale;
+        resize(scale);
     }
     @Override
     public void scaleDown(double scale)
+    {
+        resize(scale);
+    }
+
+    /// scale about the center, keeping the bounding box in step
+    private void resize(double scale)
     {
         diameter *= scale;
+        boundingBox.set(anchorPoint.x - diameter/2, anchorPoint.x + diameter/2, anchorPoint.y - diameter/2, anchorPoint.y + diameter/2);
+        version++;
     }
 
     @Override
@@ -0,0 +1,133 @@
+package drawshapes;
+
+/**
+ * Renderer that draws nothing and only counts the commands it is given.
+ * Useful for benchmarking the scene/display list side of drawing
+ * without any AWT cost, and for running headless.
+ */
+public class CountingRenderer implements Renderer
+{
+    private long colorChanges;
+    private long rects;
+    private long ovals;
+    private long outlines;
+    private long polygons;
+    private long vertices;
+    private long images;
+    private long texts;
+    private long glyphs;
+
+    @Override
+    public void setColor(int argb)
+    {
+        colorChanges++;
+    }
+
+    @Override
+    public void fillRect(int x, int y, int width, int height)
+    {
+        rects++;
+    }
+
+    @Override
+    public void fillOval(int x, int y, int width, int height)
+    {
+        ovals++;
+    }
+
+    @Override
+    public void drawRect(int x, int y, int width, int height)
+    {
+        outlines++;
+    }
+
+    @Override
+    public void fillPolygon(int[] xy, int offset, int n, int dx, int dy)
+    {
+        polygons++;
+        vertices += n;
+    }
+
+    @Override
+    public void drawPolyline(int[] xy, int offset, int n, int dx, int dy)
+    {
+        polygons++;
+        vertices += n;
+    }
+
+    @Override
+    public void drawImage(int id, int x, int y, int width, int height)
+    {
+        images++;
+    }
+
+    @Override
+    public void drawGlyphs(GlyphRun run, int x, int y)
+    {
+        texts++;
+        glyphs += run.getGlyphCount();
+    }
+
+    public long getColorChanges()
+    {
+        return colorChanges;
+    }
+
+    public long getRects()
+    {
+        return rects;
+    }
+
+    public long getOvals()
+    {
+        return ovals;
+    }
+
+    public long getOutlines()
+    {
+        return outlines;
+    }
+
+    /// polygons and polylines
+    public long getPolygons()
+    {
+        return polygons;
+    }
+
+    public long getVertices()
+    {
+        return vertices;
+    }
+
+    public long getImages()
+    {
+        return images;
+    }
+
+    public long getTexts()
+    {
+        return texts;
+    }
+
+    public long getGlyphs()
+    {
+        return glyphs;
+    }
+
+    /// total number of primitives drawn, not counting color changes
+    public long getPrimitives()
+    {
+        return rects + ovals + outlines + polygons + images + texts;
+    }
+
+    public void reset()
+    {
+        colorChanges = rects = ovals = outlines = polygons = vertices = images = texts = glyphs = 0;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("colors=%d rects=%d ovals=%d outlines=%d polygons=%d images=%d texts=%d", colorChanges, rects, ovals, outlines, polygons, images, texts);
+    }
+}
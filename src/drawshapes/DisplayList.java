@@ -0,0 +1,439 @@
+package drawshapes;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compiled, replayable list of drawing commands for a scene.
+ *
+ * Each shape is recorded once into a small int[] segment (opcode
+ * followed by its arguments) and the segments are concatenated into one
+ * flat buffer in draw order. compile() only re-records shapes whose
+ * version changed since the last compile, and only rebuilds the flat
+ * buffer if something changed at all; if the shapes that changed kept
+ * their places and the length of their commands (a selection flip, a
+ * recolor, a move or scale of a few shapes), their commands are written
+ * over the old ones in place instead. replay() is then a tight loop over
+ * an int[] with no virtual calls into the shapes.
+ *
+ * Commands that take an object (a GlyphRun) store an index into a
+ * side array of objects instead; a segment keeps its own objects and
+ * where their indices go, and flatten() fills them in.
+ *
+ * A DisplayList is itself a Renderer: that is how shapes record into it.
+ */
+public class DisplayList implements Renderer
+{
+    static final int SET_COLOR = 1;
+    static final int FILL_RECT = 2;
+    static final int FILL_OVAL = 3;
+    static final int DRAW_RECT = 4;
+    // followed by n, dx, dy and then the n packed vertices
+    static final int FILL_POLYGON = 5;
+    static final int DRAW_POLYLINE = 6;
+    // image id, x, y, width, height
+    static final int DRAW_IMAGE = 7;
+    // index into objects, x, y
+    static final int DRAW_GLYPHS = 8;
+    // x, y, width, height, and how many ints to skip to get past the END_GROUP
+    static final int BEGIN_GROUP = 9;
+    static final int END_GROUP = 10;
+
+    private static final int[] EMPTY = new int[0];
+
+    /// one shape's recorded commands, and the shape version they were recorded at
+    private static class Segment {
+        int version;
+        int[] ops;
+        // objects the commands refer to, and where in ops their indices go; null if none
+        Object[] refs;
+        int[] refSlots;
+        boolean live;
+    }
+
+    private final Map<IShape, Segment> segments = new IdentityHashMap<>();
+    private IShape[] order = new IShape[0];
+    private int[] versions = new int[0];
+    // where each shape's commands start in buffer, plus where the last ends
+    private int[] starts = new int[1];
+    private int orderLength;
+    private int[] buffer = EMPTY;
+    private int size;
+    private Object[] objects = new Object[0];
+    private int objectCount;
+
+    // scratch space used while recording a single shape
+    private int[] recording = new int[16];
+    private int recorded;
+    private Object[] recordingRefs = new Object[4];
+    private int[] recordingSlots = new int[4];
+    private int recordedRefs;
+    // where the open BEGIN_GROUPs are in recording
+    private final IntList openGroups = new IntList();
+    // translated() hands out one of these per group depth, so that
+    // re-recording a group, as every drag over one does, allocates nothing
+    private Group.Translated[] translators = new Group.Translated[4];
+
+    /**
+     * Bring this display list up to date with the given shapes, which
+     * are drawn in list order. The list should be random access; it is
+     * walked by index so that an unchanged scene compiles without
+     * allocating anything.
+     *
+     * @param shapes
+     * @return true if the flat command buffer had to be rebuilt
+     */
+    public boolean compile(List<IShape> shapes)
+    {
+        boolean changed = false;
+        // set once the buffer can't just be patched where shapes changed
+        boolean relayout = false;
+        int count = 0;
+        int n = shapes.size();
+        for (int k = 0; k < n; k++) {
+            IShape s = shapes.get(k);
+            if (s == null) {
+                continue;
+            }
+            if (count >= order.length) {
+                order = Arrays.copyOf(order, Math.max(16, order.length * 2));
+                versions = Arrays.copyOf(versions, order.length);
+                changed = true;
+                relayout = true;
+            }
+            // fast path: same shape in the same slot, and it hasn't changed
+            if (order[count] == s && versions[count] == s.getVersion()) {
+                count++;
+                continue;
+            }
+            order[count] = s;
+            versions[count] = s.getVersion();
+            changed = true;
+            count++;
+
+            Segment seg = segments.get(s);
+            if (seg == null) {
+                seg = new Segment();
+                segments.put(s, seg);
+                record(s, seg);
+                changed = true;
+            } else if (seg.version != s.getVersion()) {
+                record(s, seg);
+                changed = true;
+            }
+            if (!relayout) {
+                int at = count - 1;
+                if (at < orderLength && seg.refs == null && seg.ops.length == starts[at + 1] - starts[at]) {
+                    System.arraycopy(seg.ops, 0, buffer, starts[at], seg.ops.length);
+                } else {
+                    relayout = true;
+                }
+            }
+        }
+        if (count != orderLength) {
+            changed = true;
+            relayout = true;
+        }
+        orderLength = count;
+        for (int i = count; i < order.length && order[i] != null; i++) {
+            order[i] = null;
+        }
+
+        // forget shapes that are no longer in the scene. Shapes replaced by
+        // edited copies leave their segments behind one at a time, so this
+        // waits until there are as many of those as live ones, to keep the
+        // sweep's cost proportional to what it removes
+        if (segments.size() > 2 * count) {
+            for (int i = 0; i < count; i++) {
+                segments.get(order[i]).live = true;
+            }
+            segments.values().removeIf(seg -> !seg.live);
+            for (Segment seg : segments.values()) {
+                seg.live = false;
+            }
+        }
+
+        if (relayout) {
+            flatten();
+        }
+        return changed;
+    }
+
+    private void record(IShape s, Segment seg)
+    {
+        recorded = 0;
+        recordedRefs = 0;
+        openGroups.clear();
+        s.render(this);
+        if (seg.ops != null && seg.ops.length == recorded) {
+            // usual case for a selection or color change: same commands, new arguments
+            System.arraycopy(recording, 0, seg.ops, 0, recorded);
+        } else {
+            seg.ops = Arrays.copyOf(recording, recorded);
+        }
+        if (recordedRefs == 0) {
+            seg.refs = null;
+            seg.refSlots = null;
+        } else if (seg.refs != null && seg.refs.length == recordedRefs) {
+            System.arraycopy(recordingRefs, 0, seg.refs, 0, recordedRefs);
+            System.arraycopy(recordingSlots, 0, seg.refSlots, 0, recordedRefs);
+        } else {
+            seg.refs = Arrays.copyOf(recordingRefs, recordedRefs);
+            seg.refSlots = Arrays.copyOf(recordingSlots, recordedRefs);
+        }
+        seg.version = s.getVersion();
+    }
+
+    private void flatten()
+    {
+        int total = 0;
+        for (int i = 0; i < orderLength; i++) {
+            total += segments.get(order[i]).ops.length;
+        }
+        if (buffer.length < total) {
+            buffer = new int[total];
+        }
+        if (starts.length < orderLength + 1) {
+            starts = new int[order.length + 1];
+        }
+        int pos = 0;
+        int count = 0;
+        for (int i = 0; i < orderLength; i++) {
+            Segment seg = segments.get(order[i]);
+            int[] ops = seg.ops;
+            starts[i] = pos;
+            System.arraycopy(ops, 0, buffer, pos, ops.length);
+            if (seg.refs != null) {
+                if (count + seg.refs.length > objects.length) {
+                    objects = Arrays.copyOf(objects, Math.max(objects.length * 2, count + seg.refs.length));
+                }
+                for (int k = 0; k < seg.refs.length; k++) {
+                    buffer[pos + seg.refSlots[k]] = count;
+                    objects[count++] = seg.refs[k];
+                }
+            }
+            pos += ops.length;
+        }
+        starts[orderLength] = pos;
+        size = pos;
+        // don't hold on to objects of shapes that are gone
+        Arrays.fill(objects, count, Math.max(count, objectCount), null);
+        objectCount = count;
+    }
+
+    /**
+     * Send every recorded command to the given renderer.
+     * @param r
+     */
+    public void replay(Renderer r)
+    {
+        int[] ops = buffer;
+        int i = 0;
+        while (i < size) {
+            switch (ops[i]) {
+                case SET_COLOR -> {
+                    r.setColor(ops[i + 1]);
+                    i += 2;
+                }
+                case FILL_RECT -> {
+                    r.fillRect(ops[i + 1], ops[i + 2], ops[i + 3], ops[i + 4]);
+                    i += 5;
+                }
+                case FILL_OVAL -> {
+                    r.fillOval(ops[i + 1], ops[i + 2], ops[i + 3], ops[i + 4]);
+                    i += 5;
+                }
+                case DRAW_RECT -> {
+                    r.drawRect(ops[i + 1], ops[i + 2], ops[i + 3], ops[i + 4]);
+                    i += 5;
+                }
+                case FILL_POLYGON -> {
+                    r.fillPolygon(ops, i + 4, ops[i + 1], ops[i + 2], ops[i + 3]);
+                    i += 4 + ops[i + 1] * 2;
+                }
+                case DRAW_POLYLINE -> {
+                    r.drawPolyline(ops, i + 4, ops[i + 1], ops[i + 2], ops[i + 3]);
+                    i += 4 + ops[i + 1] * 2;
+                }
+                case DRAW_IMAGE -> {
+                    r.drawImage(ops[i + 1], ops[i + 2], ops[i + 3], ops[i + 4], ops[i + 5]);
+                    i += 6;
+                }
+                case DRAW_GLYPHS -> {
+                    r.drawGlyphs((GlyphRun) objects[ops[i + 1]], ops[i + 2], ops[i + 3]);
+                    i += 4;
+                }
+                case BEGIN_GROUP -> {
+                    if (r.beginGroup(ops[i + 1], ops[i + 2], ops[i + 3], ops[i + 4])) {
+                        i += 6;
+                    } else {
+                        i += 6 + ops[i + 5];
+                    }
+                }
+                case END_GROUP -> {
+                    r.endGroup();
+                    i += 1;
+                }
+                default -> throw new IllegalStateException("Bad display list opcode: " + ops[i]);
+            }
+        }
+    }
+
+    /// number of ints in the command buffer
+    public int size()
+    {
+        return size;
+    }
+
+    /// forget everything, so the next compile records every shape again
+    public void clear()
+    {
+        segments.clear();
+        Arrays.fill(order, null);
+        Arrays.fill(objects, null);
+        objectCount = 0;
+        orderLength = 0;
+        size = 0;
+    }
+
+    // Renderer methods, used while recording a shape
+
+    @Override
+    public void setColor(int argb)
+    {
+        emit(SET_COLOR, argb);
+    }
+
+    @Override
+    public void fillRect(int x, int y, int width, int height)
+    {
+        emit(FILL_RECT, x, y, width, height);
+    }
+
+    @Override
+    public void fillOval(int x, int y, int width, int height)
+    {
+        emit(FILL_OVAL, x, y, width, height);
+    }
+
+    @Override
+    public void drawRect(int x, int y, int width, int height)
+    {
+        emit(DRAW_RECT, x, y, width, height);
+    }
+
+    @Override
+    public void fillPolygon(int[] xy, int offset, int n, int dx, int dy)
+    {
+        emit(FILL_POLYGON, xy, offset, n, dx, dy);
+    }
+
+    @Override
+    public void drawPolyline(int[] xy, int offset, int n, int dx, int dy)
+    {
+        emit(DRAW_POLYLINE, xy, offset, n, dx, dy);
+    }
+
+    @Override
+    public void drawImage(int id, int x, int y, int width, int height)
+    {
+        ensure(6);
+        recording[recorded++] = DRAW_IMAGE;
+        recording[recorded++] = id;
+        recording[recorded++] = x;
+        recording[recorded++] = y;
+        recording[recorded++] = width;
+        recording[recorded++] = height;
+    }
+
+    @Override
+    public void drawGlyphs(GlyphRun run, int x, int y)
+    {
+        ensure(4);
+        if (recordedRefs == recordingRefs.length) {
+            recordingRefs = Arrays.copyOf(recordingRefs, recordedRefs * 2);
+            recordingSlots = Arrays.copyOf(recordingSlots, recordedRefs * 2);
+        }
+        recordingRefs[recordedRefs] = run;
+        recordingSlots[recordedRefs++] = recorded + 1;
+        recording[recorded++] = DRAW_GLYPHS;
+        recording[recorded++] = -1;
+        recording[recorded++] = x;
+        recording[recorded++] = y;
+    }
+
+    /// always records the group; whether to draw it is up to the renderer it's replayed to
+    @Override
+    public boolean beginGroup(int x, int y, int width, int height)
+    {
+        openGroups.add(recorded);
+        emit(BEGIN_GROUP, x, y, width, height);
+        ensure(1);
+        recording[recorded++] = 0;
+        return true;
+    }
+
+    @Override
+    public Renderer translated(int dx, int dy)
+    {
+        int depth = openGroups.size();
+        if (depth >= translators.length) {
+            translators = Arrays.copyOf(translators, depth * 2);
+        }
+        Group.Translated t = translators[depth];
+        if (t == null) {
+            t = new Group.Translated(this, dx, dy);
+            translators[depth] = t;
+        } else {
+            t.moveTo(dx, dy);
+        }
+        return t;
+    }
+
+    @Override
+    public void endGroup()
+    {
+        ensure(1);
+        recording[recorded++] = END_GROUP;
+        int begin = openGroups.get(openGroups.size() - 1);
+        openGroups.removeLast();
+        recording[begin + 5] = recorded - (begin + 6);
+    }
+
+    private void emit(int op, int[] xy, int offset, int n, int dx, int dy)
+    {
+        ensure(4 + n * 2);
+        recording[recorded++] = op;
+        recording[recorded++] = n;
+        recording[recorded++] = dx;
+        recording[recorded++] = dy;
+        System.arraycopy(xy, offset, recording, recorded, n * 2);
+        recorded += n * 2;
+    }
+
+    private void emit(int op, int a)
+    {
+        ensure(2);
+        recording[recorded++] = op;
+        recording[recorded++] = a;
+    }
+
+    private void emit(int op, int a, int b, int c, int d)
+    {
+        ensure(5);
+        recording[recorded++] = op;
+        recording[recorded++] = a;
+        recording[recorded++] = b;
+        recording[recorded++] = c;
+        recording[recorded++] = d;
+    }
+
+    private void ensure(int n)
+    {
+        if (recorded + n > recording.length) {
+            recording = Arrays.copyOf(recording, Math.max(recording.length * 2, recorded + n));
+        }
+    }
+}
@@ -2,6 +2,8 @@ package drawshapes;
 
 import java.awt.BorderLayout;
 import java.awt.Color;
+import java.awt.Component;
+import java.awt.Dimension;
 import java.awt.Point;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
@@ -12,12 +14,19 @@ import java.awt.event.MouseEvent;
 import java.awt.event.MouseWheelEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.util.InputMismatchException;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.NoSuchElementException;
+import javax.swing.JCheckBoxMenuItem;
+import javax.swing.JColorChooser;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JMenu;
@@ -25,6 +34,10 @@ import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
 import javax.swing.JPopupMenu;
+import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 
 @SuppressWarnings("serial")
 public class DrawShapes extends JFrame
@@ -32,30 +45,91 @@ public class DrawShapes extends JFrame
     public enum ShapeType {
         SQUARE,
         CIRCLE,
-        RECTANGLE
+        RECTANGLE,
+        TEXT
     }
     
-    private DrawShapesPanel shapePanel;
+    private Component shapePanel;
+    private ActiveRenderCanvas renderCanvas; // only set in active rendering mode
+    private RenderQuality quality = new RenderQuality();
     private Scene scene;
     private ShapeType shapeType = ShapeType.SQUARE;
     private Color color = Color.RED;
     private Point startDrag;
+    private String lastQuery = "type = CIRCLE";
     private int distance = 20;
     private double scaleUpFactor = 1.5;
     private double scaleDownFactor = 0.5;
-    private LinkedList<Scene> undoStack = new LinkedList<>();
+    // mouse wheel scaling: one notch scales the selection by this much;
+    // wheel events are applied at most once a frame, and a gesture (one
+    // undo step) ends when the wheel has been still for WHEEL_GESTURE_MILLIS
+    private static final double WHEEL_SCALE_PER_NOTCH = 1.1;
+    private static final int FRAME_MILLIS = 16;
+    private static final int WHEEL_GESTURE_MILLIS = 300;
+    private Scene.ScaleGesture wheelGesture;
+    private double wheelNotches; // total since the gesture began
+    private Timer wheelFrame;
+    private Timer wheelEnd;
+    // passive rendering only: redraws at full quality once an interaction settles
+    private Timer fullQuality;
+    // new shapes snap to the center or edge of a shape this close
+    private static final int SNAP_DISTANCE = 10;
+    private boolean snapToShapes = true;
+    // the scene's shapes before each edit; the vectors are immutable, so
+    // keeping one is O(1) and shares every shape the edit didn't touch
+    private LinkedList<ShapeVector> undoStack = new LinkedList<>();
     private int undoStackIndex =  0; // current scene in the undo stack; allows for undo/redo
-    private Scene cachedCurScene; // used for redoing an undo
+    private ShapeVector cachedCurScene; // used for redoing an undo
+    // crash recovery: edits are journaled next to the current scene file
+    private static final File UNTITLED = new File("drawshapes-untitled.scene");
+    private File sceneFile = UNTITLED;
+    private EditJournal journal;
+    private Autosave autosave;
+    private boolean autoReload;
+    private HotReload hotReload;
 
     public DrawShapes(int width, int height)
+    {
+        this(width, height, false);
+    }
+
+    /**
+     * @param width
+     * @param height
+     * @param activeRendering draw from a dedicated render thread into a
+     *      BufferStrategy instead of using Swing's repaint()
+     */
+    /// a drag, nudge or scale is going on: draw fast frames until it settles.
+    /// The active render thread notices by itself when it has; in passive
+    /// mode the fullQuality timer watches for it
+    private void interacting()
+    {
+        quality.interacting();
+        if (fullQuality != null && !fullQuality.isRunning()) {
+            fullQuality.start();
+        }
+    }
+
+    public DrawShapes(int width, int height, boolean activeRendering)
     {
         setTitle("Draw Shapes!");
         scene=new Scene();
-        undoStack.push(scene);
+        undoStack.push(scene.getShapes());
 
         
         // create our canvas, add to this frame's content pane
-        shapePanel = new DrawShapesPanel(width,height,scene);
+        if (activeRendering) {
+            renderCanvas = new ActiveRenderCanvas(width, height, quality);
+            shapePanel = renderCanvas;
+        } else {
+            shapePanel = new DrawShapesPanel(width,height,scene,quality);
+            // once a drag/nudge/scale settles, draw one more frame at full
+            // quality; started by interacting(), stops once that's drawn
+            fullQuality = new Timer(100, (ActionEvent e) -> {
+                if (quality.needsFullQualityRepaint()) repaint();
+                else if (!quality.isInteracting()) fullQuality.stop();
+            });
+        }
         this.getContentPane().add(shapePanel, BorderLayout.CENTER);
         this.setResizable(false);
         this.pack();
@@ -68,14 +142,131 @@ public class DrawShapes extends JFrame
         // initialize the menu options
         initializeMenu();
 
+        // images decode in the background; draw them once they're ready
+        ImageCache.shared().addListener(() -> SwingUtilities.invokeLater(this::repaint));
+
+        // pick up where a crashed session left off, then start journaling
+        offerRecovery(UNTITLED);
+        startJournal(UNTITLED);
+        startAutosave();
+
         // Handle closing the window.
         addWindowListener(new WindowAdapter() {
             public void windowClosing(WindowEvent e) {
-                System.exit(0);
+                exit();
             }
         });
     }
 
+    /**
+     * Start the background autosave. Configured with system properties:
+     * drawshapes.autosave.interval (seconds, 0 turns it off, default 60),
+     * drawshapes.autosave.dir (default "autosave") and
+     * drawshapes.autosave.keep (number of files kept, default 5).
+     */
+    private void startAutosave()
+    {
+        long seconds = Long.getLong("drawshapes.autosave.interval", 60);
+        if (seconds <= 0) {
+            return;
+        }
+        File dir = new File(System.getProperty("drawshapes.autosave.dir", "autosave"));
+        int keep = Integer.getInteger("drawshapes.autosave.keep", 5);
+        autosave = new Autosave(scene, dir, "autosave", seconds * 1000, keep);
+        autosave.start();
+    }
+
+    /// a clean exit doesn't need the crash recovery files
+    private void exit()
+    {
+        if (autosave != null) {
+            autosave.stop();
+        }
+        if (journal != null) {
+            journal.discard();
+        }
+        System.exit(0);
+    }
+
+    /// journal edits next to the given scene file from now on
+    private void startJournal(File file)
+    {
+        if (journal != null) {
+            journal.discard();
+            journal = null;
+        }
+        sceneFile = file;
+        journal = EditJournal.open(file, scene);
+        if (autoReload) {
+            startHotReload();
+        }
+    }
+
+    /// (re)start watching the current scene file for outside changes
+    private void startHotReload()
+    {
+        stopHotReload();
+        if (!sceneFile.exists()) {
+            return;
+        }
+        hotReload = new HotReload(scene, sceneFile, this::push, (HotReload.Result r) -> {
+            cacheScene();
+            repaint();
+        });
+        try {
+            hotReload.start();
+        } catch (IOException ex) {
+            System.out.println("can't watch " + sceneFile + ": " + ex);
+            hotReload = null;
+        }
+    }
+
+    private void stopHotReload()
+    {
+        if (hotReload != null) {
+            hotReload.stop();
+            hotReload = null;
+        }
+    }
+
+    /// if a journal newer than the given file was left behind by a crash,
+    /// offer to restore the scene from it
+    private void offerRecovery(File file)
+    {
+        if (EditJournal.lastModified(file) <= file.lastModified()) {
+            return;
+        }
+        try {
+            ShapeVector recovered = EditJournal.recover(file);
+            if (recovered == null || recovered.isEmpty()) {
+                return;
+            }
+            int answer = JOptionPane.showConfirmDialog(null,
+                    "Recover " + recovered.size() + " shapes from unsaved changes to " + file.getName() + "?",
+                    "Recover", JOptionPane.YES_NO_OPTION);
+            if (answer == JOptionPane.YES_OPTION) {
+                push();
+                scene.restore(recovered);
+                cacheScene();
+                repaint();
+            }
+        } catch (IOException ex) {
+            System.out.println("can't recover " + file + ": " + ex);
+        }
+    }
+
+
+    /// in active rendering mode, hand the render thread a fresh snapshot
+    /// of the scene every time something asks for a repaint
+    @Override
+    public void repaint()
+    {
+        if (renderCanvas != null) {
+            renderCanvas.publish(scene.snapshot());
+        }
+        super.repaint();
+    }
+
 
     // undo/redo functions
     /// stores scene for redo/undo operation
@@ -88,13 +279,13 @@ public class DrawShapes extends JFrame
                 undoStackIndex--;
             }
         }
-            undoStack.push(scene.copy());
+            undoStack.push(scene.getShapes());
     }
 
     /// caches the current scene as a reference for redo-ing an action
     private void cacheScene()
     {
-        cachedCurScene = scene.copy();
+        cachedCurScene = scene.getShapes();
     }
 
     private void undo()
@@ -176,7 +367,94 @@ public class DrawShapes extends JFrame
             cacheScene();
         });
 
+        JMenu orderMenu = new JMenu("Order");
+        rClickMenu.add(orderMenu);
+        String[] orderNames = {"Bring To Front", "Send To Back", "Raise", "Lower"};
+        for (Scene.ZOrder order : Scene.ZOrder.values()) {
+            JMenuItem orderItem = new JMenuItem(orderNames[order.ordinal()]);
+            orderMenu.add(orderItem);
+            orderItem.addActionListener((ActionEvent e) -> {
+                System.out.println(e.getActionCommand());
+                push();
+                scene.reorderSelected(order);
+                repaint();
+                cacheScene();
+            });
+        }
+
+        JMenuItem groupItem = new JMenuItem("Group");
+        rClickMenu.add(groupItem);
+        groupItem.addActionListener((ActionEvent e) -> {
+            System.out.println(e.getActionCommand());
+            push();
+            scene.groupSelected();
+            repaint();
+            cacheScene();
+        });
+
+        JMenuItem ungroupItem = new JMenuItem("Ungroup");
+        rClickMenu.add(ungroupItem);
+        ungroupItem.addActionListener((ActionEvent e) -> {
+            System.out.println(e.getActionCommand());
+            push();
+            scene.ungroupSelected();
+            repaint();
+            cacheScene();
+        });
+
+        JMenuItem overlapItem = new JMenuItem("Select Overlapping");
+        rClickMenu.add(overlapItem);
+        overlapItem.addActionListener((ActionEvent e) -> {
+            System.out.println(e.getActionCommand());
+            long start = System.nanoTime();
+            OverlapAnalysis.Result result = scene.selectOverlapping();
+            System.out.printf("%s in %.1f ms\n", result, (System.nanoTime() - start) / 1e6);
+            repaint();
+        });
+
+        JMenuItem queryItem = new JMenuItem("Select Where...");
+        rClickMenu.add(queryItem);
+        queryItem.addActionListener((ActionEvent e) -> {
+            System.out.println(e.getActionCommand());
+            String text = JOptionPane.showInputDialog(null,
+                    "Select shapes where, e.g. type = CIRCLE and (color = RED or diameter > 50)", lastQuery);
+            if (text == null || text.isBlank()) {
+                return;
+            }
+            try {
+                ShapeQuery query = ShapeQuery.parse(text);
+                lastQuery = text;
+                long start = System.nanoTime();
+                int selected = scene.selectWhere(query);
+                System.out.printf("%s: %d selected in %.1f ms\n", query, selected, (System.nanoTime() - start) / 1e6);
+                repaint();
+            } catch (IllegalArgumentException ex) {
+                JOptionPane.showMessageDialog(null, "ERROR: " + ex.getMessage());
+            }
+        });
 
+        JMenuItem replicateItem = new JMenuItem("Replicate Into Grid...");
+        rClickMenu.add(replicateItem);
+        replicateItem.addActionListener((ActionEvent e) -> {
+            System.out.println(e.getActionCommand());
+            String size = JOptionPane.showInputDialog(null, "Rows x columns, e.g. 10x10", "10x10");
+            if (size == null) {
+                return;
+            }
+            String[] rc = size.toLowerCase().split("x");
+            try {
+                int rows = Integer.parseInt(rc[0].trim());
+                int cols = Integer.parseInt(rc[1].trim());
+                push();
+                long start = System.nanoTime();
+                int added = scene.replicateSelected(rows, cols, distance / 2);
+                System.out.printf("replicated into %d new shapes in %.1f ms\n", added, (System.nanoTime() - start) / 1e6);
+                repaint();
+                cacheScene();
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException ex) {
+                JOptionPane.showMessageDialog(null, "ERROR: expected rows x columns, got " + size);
+            }
+        });
 
 
 
@@ -187,27 +465,35 @@ public class DrawShapes extends JFrame
                 System.out.printf("Mouse cliked at (%d, %d)\n", e.getX(), e.getY());
                 // handles placing shapes when left clicked
                 if (e.getButton()==MouseEvent.BUTTON1) { 
+                    Point p = snapToShapes ? scene.snap(e.getPoint(), SNAP_DISTANCE) : e.getPoint();
                     if (shapeType == ShapeType.SQUARE) {
                         push();
                         scene.addShape(new Square(color, 
-                                e.getX(), 
-                                e.getY(),
+                                p.x, 
+                                p.y,
                                 100));
                         cacheScene();
                     } else if (shapeType == ShapeType.CIRCLE){
                         push();
                         scene.addShape(new Circle(color,
-                                e.getPoint(),
+                                p,
                                 100));
                         cacheScene();
                     } else if (shapeType == ShapeType.RECTANGLE) {
                         push();
                         scene.addShape(new Rectangle(
-                                e.getPoint(),
+                                p,
                                 100, 
                                 200,
                                 color));
                         cacheScene();
+                    } else if (shapeType == ShapeType.TEXT) {
+                        String text = JOptionPane.showInputDialog(null, "Label text:");
+                        if (text != null && !text.isEmpty()) {
+                            push();
+                            scene.addShape(new TextLabel(p, text, 24, color));
+                            cacheScene();
+                        }
                     }
                     
                 } else if (e.getButton()==MouseEvent.BUTTON2) {
@@ -258,19 +544,71 @@ public class DrawShapes extends JFrame
             
             @Override
             public void mouseDragged(MouseEvent e) {
-                System.out.printf("mouse drag! (%d, %d)\n", e.getX(), e.getY());
-                scene.updateSelectRect(e.getPoint());
+                // no printing here: this runs for every drag event and
+                // should not allocate
+                interacting();
+                scene.updateSelectRect(e.getX(), e.getY());
                 repaint();
             }
 
+            @Override
+            public void mouseMoved(MouseEvent e) {
+                // runs for every mouse move: no printing, and only
+                // repaint when the highlighted shape changes
+                if (scene.updateHover(e.getX(), e.getY())) {
+                    repaint();
+                }
+            }
+
             @Override
             public void mouseWheelMoved(MouseWheelEvent e) {
-                // TODO use this to grow/shrink shapes
+                // no printing: touchpads send lots of tiny deltas. They're
+                // only added up here and applied by the frame timer
+                interacting();
+                if (wheelGesture == null) {
+                    wheelGesture = scene.beginScale();
+                    if (wheelGesture == null) {
+                        return;
+                    }
+                    push();
+                    wheelNotches = 0;
+                }
+                wheelNotches += e.getPreciseWheelRotation();
+                if (!wheelFrame.isRunning()) {
+                    wheelFrame.start();
+                }
+                wheelEnd.restart();
             }
             
         };
+        wheelFrame = new Timer(FRAME_MILLIS, (ActionEvent e) -> applyWheel());
+        wheelFrame.setRepeats(false);
+        wheelEnd = new Timer(WHEEL_GESTURE_MILLIS, (ActionEvent e) -> {
+            applyWheel();
+            if (wheelGesture != null) {
+                wheelGesture.commit();
+                wheelGesture = null;
+                cacheScene();
+            }
+        });
+        wheelEnd.setRepeats(false);
         shapePanel.addMouseMotionListener(a);
         shapePanel.addMouseListener(a);
+        shapePanel.addMouseWheelListener(a);
+    }
+
+    /// scale the selection by all the wheel movement so far in this gesture
+    private void applyWheel()
+    {
+        if (wheelGesture == null) {
+            return;
+        }
+        // rolling away from you (negative rotation) grows the selection
+        if (!wheelGesture.scaleTo(Math.pow(WHEEL_SCALE_PER_NOTCH, -wheelNotches))) {
+            // something else edited the scene; the next wheel event starts over
+            wheelGesture = null;
+        }
+        repaint();
     }
     
     /**
@@ -304,6 +642,8 @@ public class DrawShapes extends JFrame
                     {
                         push();
                         scene.loadFromFile(selectedFile);
+                        offerRecovery(selectedFile);
+                        startJournal(selectedFile);
                         cacheScene();
                         repaint();
                     } catch (IOException ex) //lazy exception
@@ -340,17 +680,107 @@ public class DrawShapes extends JFrame
 
                     try (PrintWriter out  = new PrintWriter(selectedFile))
                     {
-                        out.write(scene.toString());
+                        // stream a snapshot rather than building one big string
+                        Scene.write(scene.getShapes(), out);
                     }  catch (Exception ex)
                     {
                         JOptionPane.showMessageDialog(null, "ERROR: " + ex);
                     }
+                    startJournal(selectedFile);
 
                    
                     
                 }
             }
         });
+        // save as svg
+        JMenuItem svgItem = new JMenuItem("Save As SVG...");
+        fileMenu.add(svgItem);
+        svgItem.addActionListener((ActionEvent e) -> {
+            System.out.println(e.getActionCommand());
+            JFileChooser jfc = new JFileChooser(".");
+            if (jfc.showSaveDialog(null) != JFileChooser.APPROVE_OPTION) {
+                return;
+            }
+            File selectedFile = jfc.getSelectedFile();
+            System.out.println("export svg to " + selectedFile.getAbsolutePath());
+            try (Writer out = new BufferedWriter(new FileWriter(selectedFile), 1 << 16)) {
+                SvgRenderer.export(scene.getShapes(), out, shapePanel.getWidth(), shapePanel.getHeight());
+            } catch (IOException | UncheckedIOException ex) {
+                JOptionPane.showMessageDialog(null, "ERROR: " + ex);
+            }
+        });
+        // diff
+        JMenuItem diffItem = new JMenuItem("Diff With File...");
+        fileMenu.add(diffItem);
+        diffItem.addActionListener((ActionEvent e) -> {
+            System.out.println(e.getActionCommand());
+            JFileChooser jfc = new JFileChooser(".");
+            if (jfc.showOpenDialog(null) != JFileChooser.APPROVE_OPTION) {
+                return;
+            }
+            try {
+                SceneDiff.Records current = SceneDiff.Records.of(scene.getShapes());
+                SceneDiff.Records other = SceneDiff.Records.read(jfc.getSelectedFile());
+                List<SceneDiff.Edit> edits = SceneDiff.compare(current, other).edits();
+                StringBuilder text = new StringBuilder();
+                text.append(edits.size()).append(" edits from this scene to ")
+                    .append(jfc.getSelectedFile().getName()).append("\n");
+                // a huge diff is better read with the command line tool
+                for (int i = 0; i < Math.min(edits.size(), 1000); i++) {
+                    text.append(edits.get(i)).append("\n");
+                }
+                if (edits.size() > 1000) {
+                    text.append("... ").append(edits.size() - 1000).append(" more\n");
+                }
+                JTextArea area = new JTextArea(text.toString(), 25, 60);
+                area.setEditable(false);
+                JOptionPane.showMessageDialog(null, new JScrollPane(area), "Diff", JOptionPane.PLAIN_MESSAGE);
+            } catch (IOException | NoSuchElementException | IllegalArgumentException | UnsupportedOperationException ex) {
+                // a scene file that's half written or not a scene file at all
+                JOptionPane.showMessageDialog(null, "ERROR: " + ex);
+            }
+        });
+        // insert image
+        JMenuItem imageItem = new JMenuItem("Insert Image...");
+        fileMenu.add(imageItem);
+        imageItem.addActionListener((ActionEvent e) -> {
+            System.out.println(e.getActionCommand());
+            JFileChooser jfc = new JFileChooser(".");
+            if (jfc.showOpenDialog(null) != JFileChooser.APPROVE_OPTION) {
+                return;
+            }
+            File selectedFile = jfc.getSelectedFile().getAbsoluteFile();
+            Dimension size = ImageCache.size(selectedFile);
+            if (size == null) {
+                JOptionPane.showMessageDialog(null, "ERROR: Not an image: " + selectedFile.getName());
+                return;
+            }
+            // fit it in half the window, keeping its shape
+            double fit = Math.min(1, Math.min(shapePanel.getWidth() / 2.0 / size.width, shapePanel.getHeight() / 2.0 / size.height));
+            push();
+            scene.addShape(new ImageShape(new Point(shapePanel.getWidth() / 2, shapePanel.getHeight() / 2),
+                    Math.max(1, (int) (size.width * fit)), Math.max(1, (int) (size.height * fit)),
+                    selectedFile.getPath(), null));
+            cacheScene();
+            repaint();
+        });
+        // auto reload
+        JCheckBoxMenuItem reloadItem = new JCheckBoxMenuItem("Auto Reload");
+        fileMenu.add(reloadItem);
+        reloadItem.addActionListener((ActionEvent e) -> {
+            System.out.println(e.getActionCommand());
+            autoReload = reloadItem.isSelected();
+            if (autoReload && !sceneFile.exists()) {
+                JOptionPane.showMessageDialog(null, "Auto Reload watches the scene file; load or save one first");
+                autoReload = false;
+                reloadItem.setSelected(false);
+            } else if (autoReload) {
+                startHotReload();
+            } else {
+                stopHotReload();
+            }
+        });
         fileMenu.addSeparator();
         // edit
         JMenuItem itemExit = new JMenuItem ("Exit");
@@ -359,7 +789,7 @@ public class DrawShapes extends JFrame
             public void actionPerformed(ActionEvent e) {
                 String text=e.getActionCommand();
                 System.out.println(text);
-                System.exit(0);
+                exit();
             }
         });
 
@@ -415,6 +845,17 @@ public class DrawShapes extends JFrame
                  color = Color.GREEN;
              }
          });
+
+        // any other color, including translucent ones
+        JMenuItem customColorItem = new JMenuItem("Custom...");
+        colorMenu.add(customColorItem);
+        customColorItem.addActionListener((ActionEvent e) -> {
+            System.out.println(e.getActionCommand());
+            Color chosen = JColorChooser.showDialog(this, "Shape Color", color);
+            if (chosen != null) {
+                color = Palette.intern(chosen);
+            }
+        });
         
         // shape menu
         JMenu shapeMenu = new JMenu("Shape");
@@ -452,7 +893,22 @@ public class DrawShapes extends JFrame
                 shapeType = ShapeType.RECTANGLE;
             }
         });
-        
+
+        // text
+        JMenuItem textItem = new JMenuItem("Text");
+        shapeMenu.add(textItem);
+        textItem.addActionListener((ActionEvent e) -> {
+            System.out.println("Text");
+            shapeType = ShapeType.TEXT;
+        });
+        shapeMenu.addSeparator();
+        JCheckBoxMenuItem snapItem = new JCheckBoxMenuItem("Snap To Shapes", snapToShapes);
+        shapeMenu.add(snapItem);
+        snapItem.addActionListener((ActionEvent e) -> {
+            System.out.println(e.getActionCommand());
+            snapToShapes = snapItem.isSelected();
+        });
+
         // operation mode menu
         JMenu operationModeMenu=new JMenu("Operation");
         menuBar.add(operationModeMenu);
@@ -542,6 +998,7 @@ public class DrawShapes extends JFrame
             public void keyTyped(KeyEvent e) {
                 char k = e.getKeyChar();
                 // TODO: implement this method if you need it
+                if ("wasdpl".indexOf(k) >= 0) interacting();
         
                 if(k == 'w') {
                     push(); 
@@ -567,18 +1024,12 @@ public class DrawShapes extends JFrame
 
                 if(k == 'p') {
                     push();
-                    for (IShape shapes: scene) if (shapes.isSelected()) 
-                    {
-                        shapes.scaleUp(scaleUpFactor);
-                    }
+                    scene.scaleSelected(scaleUpFactor);
                     cacheScene();
                 }
                 if(k == 'l') {
                     push();
-                    for (IShape shapes: scene) if (shapes.isSelected()) 
-                    {
-                        shapes.scaleDown(scaleDownFactor);
-                    }
+                    scene.scaleSelected(scaleDownFactor);
                     cacheScene();
                 }
                 
@@ -593,11 +1044,15 @@ public class DrawShapes extends JFrame
     }
     
     /**
-     * @param args
+     * @param args pass --active to use the active rendering mode
      */
     public static void main(String[] args)
     {
-        DrawShapes shapes=new DrawShapes(700, 600);
+        boolean active = false;
+        for (String arg : args) {
+            if (arg.equals("--active")) active = true;
+        }
+        DrawShapes shapes=new DrawShapes(700, 600, active);
         shapes.setVisible(true);
     }
 
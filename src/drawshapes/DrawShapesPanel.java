@@ -20,19 +20,33 @@ public class DrawShapesPanel extends JPanel
     private int width;
     private int height;
     private Scene scene;
+    private RenderQuality quality;
     
     public DrawShapesPanel(int width, int height, Scene scene)
+    {
+        this(width, height, scene, new RenderQuality());
+    }
+
+    public DrawShapesPanel(int width, int height, Scene scene, RenderQuality quality)
     {
         this.width = width;
         this.height = height;
         this.scene=scene;
+        this.quality=quality;
     }
     
     /* (non-Javadoc)
-     * @see javax.swing.JComponent#paint(java.awt.Graphics)
+     * @see javax.swing.JComponent#paintComponent(java.awt.Graphics)
      */
-    public void paint(Graphics g) {
-        scene.draw(g);
+    @Override
+    protected void paintComponent(Graphics g) {
+        // overriding paintComponent rather than paint keeps Swing's
+        // double buffering; super clears the background for us
+        super.paintComponent(g);
+        long start = System.nanoTime();
+        RenderQuality.Level level = quality.beginFrame(g);
+        scene.draw(g, level);
+        quality.endFrame(System.nanoTime() - start);
     }
     
     /* (non-Javadoc)
@@ -0,0 +1,96 @@
+package drawshapes;
+
+/**
+ * Uniform grid over the edges of a polygon or polyline, so a hit test
+ * looks at the few edges near the point instead of all of them.
+ *
+ * Each edge is listed in every cell its (padded) bounding box touches.
+ * The lists are packed into one int array, with cellStart[c] the offset
+ * of cell c's list, so the grid is two arrays whatever the vertex count.
+ * Coordinates are the shape's own (relative to its anchor), so moving
+ * the shape doesn't invalidate the grid.
+ */
+final class EdgeGrid
+{
+    private final int left;
+    private final int top;
+    private final double cellWidth;
+    private final double cellHeight;
+    final int cols;
+    final int rows;
+    private final int[] cellStart;
+    private int[] cellEdges;
+
+    /**
+     * @param xy vertices, packed x0, y0, x1, y1, ...
+     * @param n number of vertices
+     * @param edges number of edges; edge i joins vertex i and vertex (i + 1) % n
+     * @param pad grow each edge's box by this much before placing it
+     */
+    EdgeGrid(int[] xy, int n, int edges, int left, int top, int right, int bottom, int pad)
+    {
+        this.left = left - pad;
+        this.top = top - pad;
+        int side = Math.max(1, (int) Math.sqrt(edges));
+        this.cols = side;
+        this.rows = side;
+        this.cellWidth = Math.max(1, right - left + 2 * pad + 1) / (double) cols;
+        this.cellHeight = Math.max(1, bottom - top + 2 * pad + 1) / (double) rows;
+
+        // count, then fill: cellStart ends up as the start of each cell's list
+        cellStart = new int[cols * rows + 1];
+        for (int pass = 0; pass < 2; pass++) {
+            int[] fill = pass == 0 ? null : cellStart.clone();
+            for (int e = 0; e < edges; e++) {
+                int a = e * 2;
+                int b = ((e + 1) % n) * 2;
+                int c0 = col(Math.min(xy[a], xy[b]) - pad);
+                int c1 = col(Math.max(xy[a], xy[b]) + pad);
+                int r0 = row(Math.min(xy[a + 1], xy[b + 1]) - pad);
+                int r1 = row(Math.max(xy[a + 1], xy[b + 1]) + pad);
+                for (int r = r0; r <= r1; r++) {
+                    for (int c = c0; c <= c1; c++) {
+                        if (pass == 0) {
+                            cellStart[r * cols + c + 1]++;
+                        } else {
+                            cellEdges[fill[r * cols + c]++] = e;
+                        }
+                    }
+                }
+            }
+            if (pass == 0) {
+                for (int c = 0; c < cols * rows; c++) {
+                    cellStart[c + 1] += cellStart[c];
+                }
+                cellEdges = new int[cellStart[cols * rows]];
+            }
+        }
+    }
+
+    int col(double x)
+    {
+        return Math.max(0, Math.min(cols - 1, (int) ((x - left) / cellWidth)));
+    }
+
+    int row(double y)
+    {
+        return Math.max(0, Math.min(rows - 1, (int) ((y - top) / cellHeight)));
+    }
+
+    /// first index into edge() of the given cell's edges
+    int start(int col, int row)
+    {
+        return cellStart[row * cols + col];
+    }
+
+    /// one past the last index of the given cell's edges
+    int end(int col, int row)
+    {
+        return cellStart[row * cols + col + 1];
+    }
+
+    int edge(int i)
+    {
+        return cellEdges[i];
+    }
+}
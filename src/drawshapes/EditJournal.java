@@ -0,0 +1,631 @@
+package drawshapes;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Write-ahead journal of scene edits, for crash recovery.
+ *
+ * Next to a scene file "foo" we keep two files:
+ * <ul>
+ * <li>foo.checkpoint - every shape in the scene as of some version</li>
+ * <li>foo.journal - every edit published after that version</li>
+ * </ul>
+ *
+ * Scene calls the added/removed/moved/... methods while it publishes an
+ * edit. Each one encodes a small binary record, the size of what the
+ * edit touched, and queues it; nothing touches the disk on the calling
+ * thread. A single writer thread takes whatever has queued up, writes it
+ * with one write() and one fsync, so a burst of edits costs one flush
+ * (group commit). The same thread writes the first checkpoint, so
+ * opening a journal doesn't wait on the disk either, and every so often
+ * writes a fresh one and starts an empty journal. An edit that replaces the
+ * whole scene (loading a file, undo) isn't encoded at all: replaced()
+ * just asks the writer thread for a checkpoint, which holds it.
+ *
+ * Every record ends with a CRC, so a record torn by a crash is
+ * detected and recovery stops at the last good one.
+ */
+public class EditJournal
+{
+    // version 2: batches of shapes carry a palette table
+    private static final int JOURNAL_MAGIC = 0x44534a32; // "DSJ2"
+    private static final int CHECKPOINT_MAGIC = 0x44534332; // "DSC2"
+
+    static final byte ADD = 1;
+    static final byte REMOVE = 2;
+    static final byte MOVE = 3;
+    static final byte RECOLOR = 4;
+    // no longer written (scaling is a TRANSFORM), but older journals still have them
+    static final byte SCALE = 5;
+    // no longer written (replaced() checkpoints instead), but older journals still have them
+    static final byte REPLACE = 6;
+    static final byte ADD_ALL = 7;
+    static final byte REORDER = 8;
+    static final byte TRANSFORM = 9;
+    static final byte SET = 10;
+    static final byte GROUP = 11;
+    static final byte UNGROUP = 12;
+
+    /// how long the writer waits for more records before flushing a batch
+    private static final long GROUP_COMMIT_MILLIS = 5;
+    private static final long COMPACT_INTERVAL_MILLIS = 30_000;
+
+    private final File checkpointFile;
+    private final File journalFile;
+    private final Scene scene;
+    /// queued by close() to tell the writer to finish up
+    private static final byte[] STOP = new byte[0];
+    /// queued by replaced() to have the writer checkpoint the scene
+    private static final byte[] CHECKPOINT = new byte[0];
+
+    private final BlockingQueue<byte[]> pending = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private volatile boolean running = true;
+    /// null until the writer has checkpointed the scene; nothing is appended before that
+    private FileChannel journal;
+    private long journalRecords;
+
+    private EditJournal(File sceneFile, Scene scene)
+    {
+        this.checkpointFile = checkpointFile(sceneFile);
+        this.journalFile = journalFile(sceneFile);
+        this.scene = scene;
+        this.writer = new Thread(this::writeLoop, "DrawShapes-journal");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Start journaling edits to the given scene next to the given file.
+     * Any journal already there is replaced by a checkpoint of the scene,
+     * written in the background; edits made meanwhile are queued.
+     *
+     * @param sceneFile
+     * @param scene
+     * @return
+     */
+    public static EditJournal open(File sceneFile, Scene scene)
+    {
+        EditJournal j = new EditJournal(sceneFile, scene);
+        scene.setJournal(j);
+        return j;
+    }
+
+    static File checkpointFile(File sceneFile)
+    {
+        return new File(sceneFile.getPath() + ".checkpoint");
+    }
+
+    static File journalFile(File sceneFile)
+    {
+        return new File(sceneFile.getPath() + ".journal");
+    }
+
+    /**
+     * Time the recovery files next to the given scene were last written,
+     * or 0 if there are none.
+     * @param sceneFile
+     * @return
+     */
+    public static long lastModified(File sceneFile)
+    {
+        return Math.max(checkpointFile(sceneFile).lastModified(), journalFile(sceneFile).lastModified());
+    }
+
+    // called by Scene, under the scene's monitor, as each edit is published
+
+    void added(long version, IShape s)
+    {
+        enqueue(ADD, version, out -> ShapeCodec.write(out, s));
+    }
+
+    void addedAll(long version, List<IShape> shapes)
+    {
+        enqueue(ADD_ALL, version, out -> writeShapes(out, shapes));
+    }
+
+    void removed(long version, int[] indices)
+    {
+        enqueue(REMOVE, version, out -> writeIndices(out, indices));
+    }
+
+    void moved(long version, int[] indices, int dx, int dy)
+    {
+        enqueue(MOVE, version, out -> {
+            writeIndices(out, indices);
+            out.writeInt(dx);
+            out.writeInt(dy);
+        });
+    }
+
+    void recolored(long version, int[] indices, int argb)
+    {
+        enqueue(RECOLOR, version, out -> {
+            writeIndices(out, indices);
+            out.writeInt(argb);
+        });
+    }
+
+    void reordered(long version, int[] indices, Scene.ZOrder order)
+    {
+        enqueue(REORDER, version, out -> {
+            writeIndices(out, indices);
+            out.writeByte(order.ordinal());
+        });
+    }
+
+    void transformed(long version, int[] indices, Transform t)
+    {
+        enqueue(TRANSFORM, version, out -> {
+            writeIndices(out, indices);
+            out.writeDouble(t.factor);
+            out.writeDouble(t.pivotX);
+            out.writeDouble(t.pivotY);
+            out.writeInt(t.dx);
+            out.writeInt(t.dy);
+        });
+    }
+
+    void set(long version, int[] indices, IShape[] shapes)
+    {
+        enqueue(SET, version, out -> {
+            writeIndices(out, indices);
+            for (IShape s : shapes) {
+                ShapeCodec.write(out, s);
+            }
+        });
+    }
+
+    /// the shapes at the (ascending) indices were put into the group, in place of the last of them
+    void grouped(long version, int[] indices, Group group)
+    {
+        enqueue(GROUP, version, out -> {
+            writeIndices(out, indices);
+            ShapeCodec.write(out, group);
+        });
+    }
+
+    /// the groups at the (ascending) indices were replaced by their members
+    void ungrouped(long version, int[] indices)
+    {
+        enqueue(UNGROUP, version, out -> writeIndices(out, indices));
+    }
+
+    /**
+     * Every shape was replaced. The new shapes aren't encoded here, on the
+     * thread doing the edit; the writer thread writes a checkpoint of the
+     * scene instead, which has them (and anything edited since).
+     */
+    void replaced(long version)
+    {
+        if (running) {
+            pending.add(CHECKPOINT);
+        }
+    }
+
+    private interface Payload {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private void enqueue(byte op, long version, Payload payload)
+    {
+        if (!running) {
+            return;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0); // length, filled in below
+            out.writeByte(op);
+            out.writeLong(version);
+            payload.write(out);
+            byte[] record = Arrays.copyOf(bytes.toByteArray(), bytes.size() + 4);
+            ByteBuffer buf = ByteBuffer.wrap(record);
+            buf.putInt(0, record.length - 4);
+            CRC32 crc = new CRC32();
+            crc.update(record, 4, record.length - 8);
+            buf.putInt(record.length - 4, (int)crc.getValue());
+            pending.add(record);
+        } catch (IOException e) {
+            // can't happen writing to memory
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void writeIndices(DataOutputStream out, int[] indices) throws IOException
+    {
+        out.writeInt(indices.length);
+        for (int i : indices) {
+            out.writeInt(i);
+        }
+    }
+
+    private static void writeShapes(DataOutputStream out, List<IShape> shapes) throws IOException
+    {
+        ShapeCodec.writeAll(out, shapes);
+    }
+
+    /// writer thread: a first checkpoint, then group commit, plus a periodic checkpoint
+    private void writeLoop()
+    {
+        // due right away: there's no journal until the first checkpoint
+        long nextCompaction = System.currentTimeMillis();
+        List<byte[]> batch = new ArrayList<>();
+        boolean stop = false;
+        while (!stop) {
+            try {
+                long wait = Math.max(1, nextCompaction - System.currentTimeMillis());
+                byte[] first = pending.poll(wait, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    if (first != STOP) {
+                        batch.add(first);
+                        // give the rest of a burst a moment to arrive
+                        Thread.sleep(GROUP_COMMIT_MILLIS);
+                    }
+                    pending.drainTo(batch);
+                    stop = batch.remove(STOP) || first == STOP;
+                    if (batch.removeIf(r -> r == CHECKPOINT) || journal == null) {
+                        // the checkpoint is taken after everything in the
+                        // batch was queued, so it covers all of it
+                        batch.clear();
+                        nextCompaction = System.currentTimeMillis() + COMPACT_INTERVAL_MILLIS;
+                        compact();
+                    }
+                    if (!batch.isEmpty()) {
+                        writeBatch(batch);
+                    }
+                    batch.clear();
+                }
+                if (!stop && System.currentTimeMillis() >= nextCompaction) {
+                    // if this fails, the next batch or interval tries again
+                    nextCompaction = System.currentTimeMillis() + COMPACT_INTERVAL_MILLIS;
+                    if (journal == null || journalRecords > 0) {
+                        compact();
+                    }
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException e) {
+                System.out.println("journal write failed: " + e);
+                batch.clear();
+            }
+        }
+    }
+
+    private void writeBatch(List<byte[]> batch) throws IOException
+    {
+        int total = 0;
+        for (byte[] r : batch) {
+            total += r.length;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(total);
+        for (byte[] r : batch) {
+            buf.put(r);
+        }
+        buf.flip();
+        while (buf.hasRemaining()) {
+            journal.write(buf);
+        }
+        journal.force(false);
+        journalRecords += batch.size();
+    }
+
+    /**
+     * Write a checkpoint of the scene and start a new, empty journal.
+     * Records already queued that are newer than the checkpoint end up in
+     * the new journal; older ones are covered by the checkpoint.
+     */
+    private void compact() throws IOException
+    {
+        ShapeVector snapshot;
+        // taking the snapshot under the scene's monitor guarantees every
+        // edit up to its version has already been queued
+        synchronized (scene) {
+            snapshot = scene.getShapes();
+        }
+        List<byte[]> newer = new ArrayList<>();
+        pending.drainTo(newer);
+        if (newer.remove(STOP)) {
+            pending.add(STOP);
+        }
+        // covered by this checkpoint too
+        newer.removeIf(r -> r == CHECKPOINT);
+        newer.removeIf(r -> ByteBuffer.wrap(r).getLong(5) <= snapshot.version());
+
+        writeCheckpoint(snapshot);
+
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+        File tmp = new File(journalFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(tmp))) {
+            out.writeInt(JOURNAL_MAGIC);
+            out.writeLong(snapshot.version());
+        }
+        Files.move(tmp.toPath(), journalFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        journal = FileChannel.open(journalFile.toPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        journalRecords = 0;
+        if (!newer.isEmpty()) {
+            writeBatch(newer);
+        }
+    }
+
+    private void writeCheckpoint(ShapeVector snapshot) throws IOException
+    {
+        File tmp = new File(checkpointFile.getPath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp)) {
+            // streamed straight to the file, the CRC computed on the way
+            CRC32 crc = new CRC32();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 1 << 16));
+            DataOutputStream checked = new DataOutputStream(new CheckedOutputStream(out, crc));
+            checked.writeInt(CHECKPOINT_MAGIC);
+            checked.writeLong(snapshot.version());
+            writeShapes(checked, snapshot);
+            out.writeInt((int)crc.getValue());
+            out.flush();
+            fos.getFD().sync();
+        }
+        Files.move(tmp.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Flush everything that is queued and stop the writer thread.
+     */
+    public void close()
+    {
+        if (!running) {
+            return;
+        }
+        running = false;
+        // a marker rather than interrupt(): interrupting a thread that is
+        // in FileChannel.force() would close the channel under it
+        pending.add(STOP);
+        try {
+            writer.join();
+            if (journal != null) {
+                journal.close();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.out.println("journal close failed: " + e);
+        }
+    }
+
+    /**
+     * Stop journaling and delete the recovery files; used on a clean exit.
+     */
+    public void discard()
+    {
+        close();
+        checkpointFile.delete();
+        journalFile.delete();
+    }
+
+    /**
+     * Rebuild the scene saved next to the given file from its checkpoint
+     * and journal. Returns null if there is nothing to recover.
+     *
+     * @param sceneFile
+     * @return the recovered shapes, versioned as the last edit replayed
+     * @throws IOException if the checkpoint is damaged
+     */
+    public static ShapeVector recover(File sceneFile) throws IOException
+    {
+        File ckpt = checkpointFile(sceneFile);
+        if (!ckpt.exists()) {
+            return null;
+        }
+        ShapeVector.Builder b;
+        long version;
+        byte[] all = Files.readAllBytes(ckpt.toPath());
+        CRC32 crc = new CRC32();
+        if (all.length >= 16) {
+            crc.update(all, 0, all.length - 4);
+        }
+        if (all.length < 16 || ByteBuffer.wrap(all).getInt(all.length - 4) != (int)crc.getValue()) {
+            throw new IOException("Damaged checkpoint: " + ckpt);
+        }
+        DataInputStream data = new DataInputStream(new ByteArrayInputStream(all));
+        if (data.readInt() != CHECKPOINT_MAGIC) {
+            throw new IOException("Not a checkpoint: " + ckpt);
+        }
+        version = data.readLong();
+        List<IShape> shapes = ShapeCodec.readAll(data);
+        b = ShapeVector.EMPTY.builder();
+        b.ensureCapacity(shapes.size());
+        for (IShape s : shapes) {
+            b.add(s);
+        }
+
+        File jf = journalFile(sceneFile);
+        if (jf.exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(jf)))) {
+                if (in.readInt() == JOURNAL_MAGIC) {
+                    in.readLong(); // version the journal was started at
+                    version = replay(in, b, version);
+                }
+            } catch (EOFException e) {
+                // empty or truncated header: nothing to replay
+            }
+        }
+        return b.build(version);
+    }
+
+    /// apply every intact record newer than the given version; stop at the first torn one
+    private static long replay(DataInputStream in, ShapeVector.Builder b, long version) throws IOException
+    {
+        while (true) {
+            byte[] record;
+            try {
+                int length = in.readInt();
+                if (length < 13 || length > (1 << 30)) {
+                    return version;
+                }
+                record = new byte[length];
+                in.readFully(record);
+            } catch (EOFException e) {
+                return version;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(record, 0, record.length - 4);
+            if (ByteBuffer.wrap(record).getInt(record.length - 4) != (int)crc.getValue()) {
+                return version;
+            }
+            DataInputStream r = new DataInputStream(new ByteArrayInputStream(record, 0, record.length - 4));
+            byte op = r.readByte();
+            long v = r.readLong();
+            if (v <= version) {
+                continue; // already in the checkpoint
+            }
+            apply(op, r, b);
+            version = v;
+        }
+    }
+
+    private static void apply(byte op, DataInputStream r, ShapeVector.Builder b) throws IOException
+    {
+        switch (op) {
+            case ADD -> b.add(ShapeCodec.read(r));
+            case ADD_ALL -> {
+                List<IShape> shapes = ShapeCodec.readAll(r);
+                b.ensureCapacity(b.size() + shapes.size());
+                for (IShape s : shapes) {
+                    b.add(s);
+                }
+            }
+            case REMOVE -> {
+                int[] indices = readIndices(r);
+                List<IShape> kept = new ArrayList<>(b.size());
+                int next = 0;
+                for (int i = 0; i < b.size(); i++) {
+                    if (next < indices.length && indices[next] == i) {
+                        next++;
+                    } else {
+                        kept.add(b.get(i));
+                    }
+                }
+                replaceAll(b, kept);
+            }
+            case MOVE -> {
+                int[] indices = readIndices(r);
+                int dx = r.readInt();
+                int dy = r.readInt();
+                for (int i : indices) {
+                    IShape c = Scene.copyOf(b.get(i));
+                    c.move(dx, dy);
+                    b.set(i, c);
+                }
+            }
+            case RECOLOR -> {
+                int[] indices = readIndices(r);
+                int argb = r.readInt();
+                for (int i : indices) {
+                    IShape c = Scene.copyOf(b.get(i));
+                    c.setColor(Palette.color(argb));
+                    b.set(i, c);
+                }
+            }
+            case SCALE -> {
+                int[] indices = readIndices(r);
+                double factor = r.readDouble();
+                for (int i : indices) {
+                    IShape c = Scene.copyOf(b.get(i));
+                    Scene.scale(c, factor);
+                    b.set(i, c);
+                }
+            }
+            case TRANSFORM -> {
+                int[] indices = readIndices(r);
+                Transform t = new Transform(r.readDouble(), r.readDouble(), r.readDouble(), r.readInt(), r.readInt());
+                IShape[] edited = Scene.transform(k -> b.get(indices[k]), indices.length, t);
+                for (int k = 0; k < indices.length; k++) {
+                    b.set(indices[k], edited[k]);
+                }
+            }
+            case SET -> {
+                for (int i : readIndices(r)) {
+                    b.set(i, ShapeCodec.read(r));
+                }
+            }
+            case REORDER -> {
+                int[] indices = readIndices(r);
+                Scene.reorder(b, indices, Scene.ZOrder.values()[r.readByte()]);
+            }
+            case GROUP -> {
+                int[] indices = readIndices(r);
+                IShape group = ShapeCodec.read(r);
+                List<IShape> kept = new ArrayList<>(b.size() - indices.length + 1);
+                int next = 0;
+                for (int i = 0; i < b.size(); i++) {
+                    if (next < indices.length && indices[next] == i) {
+                        if (++next == indices.length) {
+                            kept.add(group);
+                        }
+                    } else {
+                        kept.add(b.get(i));
+                    }
+                }
+                replaceAll(b, kept);
+            }
+            case UNGROUP -> {
+                int[] indices = readIndices(r);
+                List<IShape> kept = new ArrayList<>(b.size());
+                int next = 0;
+                for (int i = 0; i < b.size(); i++) {
+                    if (next < indices.length && indices[next] == i) {
+                        next++;
+                        kept.addAll(Arrays.asList(((Group) b.get(i)).ungroup()));
+                    } else {
+                        kept.add(b.get(i));
+                    }
+                }
+                replaceAll(b, kept);
+            }
+            case REPLACE -> replaceAll(b, ShapeCodec.readAll(r));
+            default -> throw new IOException("Unknown journal record: " + op);
+        }
+    }
+
+    private static void replaceAll(ShapeVector.Builder b, List<IShape> shapes)
+    {
+        b.clear();
+        for (IShape s : shapes) {
+            b.add(s);
+        }
+    }
+
+    private static int[] readIndices(DataInputStream in) throws IOException
+    {
+        int n = in.readInt();
+        int[] indices = new int[n];
+        for (int i = 0; i < n; i++) {
+            indices[i] = in.readInt();
+        }
+        return indices;
+    }
+}
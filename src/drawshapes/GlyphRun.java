@@ -0,0 +1,115 @@
+package drawshapes;
+
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.geom.Rectangle2D;
+
+/**
+ * A line of text shaped once into glyphs, with its measured size.
+ *
+ * Shaping (picking glyphs and their positions) is the slow part of
+ * drawing text, so a TextLabel keeps one of these and only makes a new
+ * one when its text or font size changes; drawing is then just
+ * Graphics2D.drawGlyphVector(). Runs never change, so copies of a
+ * label and display lists can share them.
+ *
+ * Glyphs are laid out for an untransformed context, the same on every
+ * screen, so a label's size doesn't depend on where it is drawn. A
+ * GlyphVector is always drawn the way it was laid out, antialiased or
+ * not, and drawing it into a Graphics set the other way is slow, so
+ * there is one for each, the second made the first time it's needed.
+ */
+public final class GlyphRun
+{
+    /// every label uses this family; only the size varies
+    static final String FAMILY = Font.SANS_SERIF;
+    private static final FontRenderContext PLAIN = new FontRenderContext(null, false, false);
+    private static final FontRenderContext SMOOTH = new FontRenderContext(null, true, false);
+
+    private final String text;
+    private final Font font;
+    private final GlyphVector smooth;
+    // made on first use; a race just makes it twice
+    private GlyphVector plain;
+    private final int width;
+    private final int ascent;
+    private final int descent;
+
+    /**
+     * @param text
+     * @param size font size in pixels
+     */
+    public GlyphRun(String text, int size)
+    {
+        this.text = text;
+        this.font = new Font(FAMILY, Font.PLAIN, size);
+        this.smooth = font.createGlyphVector(SMOOTH, text);
+        Rectangle2D bounds = smooth.getLogicalBounds();
+        this.width = (int) Math.ceil(bounds.getWidth());
+        this.ascent = (int) Math.ceil(-bounds.getY());
+        this.descent = (int) Math.ceil(bounds.getMaxY());
+    }
+
+    public String getText()
+    {
+        return text;
+    }
+
+    public Font getFont()
+    {
+        return font;
+    }
+
+    /**
+     * The glyphs laid out to be drawn antialiased or not.
+     * @param antialiased
+     * @return
+     */
+    public GlyphVector getGlyphs(boolean antialiased)
+    {
+        if (antialiased) {
+            return smooth;
+        }
+        GlyphVector g = plain;
+        if (g == null) {
+            g = font.createGlyphVector(PLAIN, text);
+            plain = g;
+        }
+        return g;
+    }
+
+    /// the glyphs to draw into the given Graphics
+    public GlyphVector getGlyphs(Graphics2D g)
+    {
+        Object text = g.getRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING);
+        boolean antialiased = text == RenderingHints.VALUE_TEXT_ANTIALIAS_DEFAULT || text == null
+                ? g.getRenderingHint(RenderingHints.KEY_ANTIALIASING) == RenderingHints.VALUE_ANTIALIAS_ON
+                : text != RenderingHints.VALUE_TEXT_ANTIALIAS_OFF;
+        return getGlyphs(antialiased);
+    }
+
+    public int getGlyphCount()
+    {
+        return smooth.getNumGlyphs();
+    }
+
+    /// advance of the whole line
+    public int getWidth()
+    {
+        return width;
+    }
+
+    /// from the top of the line to the baseline
+    public int getAscent()
+    {
+        return ascent;
+    }
+
+    public int getHeight()
+    {
+        return ascent + descent;
+    }
+}
@@ -0,0 +1,407 @@
+package drawshapes;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.FlatteningPathIterator;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * Renderer that draws onto a java.awt.Graphics, i.e. the screen
+ * or a BufferedImage.
+ */
+public class Graphics2DRenderer implements Renderer
+{
+    private static final int CACHE_BITS = 8;
+    private static final int CACHE_SIZE = 1 << CACHE_BITS;
+    // Ellipse2D's control points for a quarter circle, as fractions of the size
+    private static final double CTRL = 0.5522847498307933;
+    private static final double PCV = 0.5 + CTRL * 0.5;
+    private static final double NCV = 0.5 - CTRL * 0.5;
+    // Graphics.fillOval() makes an Ellipse2D on every call and fillPolygon()
+    // a span iterator, where filling a reused path makes nothing. One path
+    // per thread, as the EDT and the render thread both draw
+    private static final ThreadLocal<FillPath> PATH = ThreadLocal.withInitial(FillPath::new);
+
+    private Graphics g;
+    // small direct-mapped cache so drawing the same few colors over and
+    // over again doesn't create a new Color object for every shape
+    private final int[] cachedArgb = new int[CACHE_SIZE];
+    private final Color[] cachedColors = new Color[CACHE_SIZE];
+    // vertices unpacked for Graphics, reused between polygons
+    private int[] xs = new int[16];
+    private int[] ys = new int[16];
+
+    public Graphics2DRenderer(Graphics g)
+    {
+        this.g = g;
+    }
+
+    /**
+     * Point this renderer at another Graphics object, so one renderer
+     * can be reused frame after frame.
+     * @param g
+     */
+    public void setGraphics(Graphics g)
+    {
+        this.g = g;
+    }
+
+    @Override
+    public void setColor(int argb)
+    {
+        // multiplicative hash: xor-folding the bytes put every opaque
+        // primary (RED, GREEN, BLUE, BLACK ...) in the same slot
+        int slot = (argb * 0x9E3779B9) >>> (32 - CACHE_BITS);
+        Color c = cachedColors[slot];
+        if (c == null || cachedArgb[slot] != argb) {
+            c = new Color(argb, true);
+            cachedColors[slot] = c;
+            cachedArgb[slot] = argb;
+        }
+        g.setColor(c);
+    }
+
+    @Override
+    public void fillRect(int x, int y, int width, int height)
+    {
+        g.fillRect(x, y, width, height);
+    }
+
+    @Override
+    public void fillOval(int x, int y, int width, int height)
+    {
+        if (g instanceof Graphics2D g2) {
+            fillOval(g2, x, y, width, height);
+        } else {
+            g.fillOval(x, y, width, height);
+        }
+    }
+
+    @Override
+    public void drawRect(int x, int y, int width, int height)
+    {
+        g.drawRect(x, y, width, height);
+    }
+
+    @Override
+    public void fillPolygon(int[] xy, int offset, int n, int dx, int dy)
+    {
+        if (g instanceof Graphics2D g2) {
+            fillPolygon(g2, xy, offset, n, dx, dy);
+        } else {
+            unpack(xy, offset, n, dx, dy);
+            g.fillPolygon(xs, ys, n);
+        }
+    }
+
+    @Override
+    public void drawPolyline(int[] xy, int offset, int n, int dx, int dy)
+    {
+        unpack(xy, offset, n, dx, dy);
+        g.drawPolyline(xs, ys, n);
+    }
+
+    @Override
+    public void drawImage(int id, int x, int y, int width, int height)
+    {
+        BufferedImage img = ImageCache.shared().get(g, id, width, height);
+        if (img == null) {
+            g.drawRect(x, y, width, height);
+        } else {
+            g.drawImage(img, x, y, width, height, null);
+        }
+    }
+
+    @Override
+    public void drawGlyphs(GlyphRun run, int x, int y)
+    {
+        if (g instanceof Graphics2D g2) {
+            g2.drawGlyphVector(run.getGlyphs(g2), x, y);
+        } else {
+            g.setFont(run.getFont());
+            g.drawString(run.getText(), x, y);
+        }
+    }
+
+    @Override
+    public boolean beginGroup(int x, int y, int width, int height)
+    {
+        return g.hitClip(x, y, width, height);
+    }
+
+    /**
+     * Graphics.fillOval() without allocating: the path has the curves
+     * Ellipse2D has, so the pixels are the same.
+     */
+    static void fillOval(Graphics2D g, int x, int y, int width, int height)
+    {
+        FillPath p = PATH.get().begin(g);
+        p.moveTo(x + width, y + 0.5 * height);
+        p.curveTo(x + width, y + PCV * height, x + PCV * width, y + height, x + 0.5 * width, y + height);
+        p.curveTo(x + NCV * width, y + height, x, y + PCV * height, x, y + 0.5 * height);
+        p.curveTo(x, y + NCV * height, x + NCV * width, y, x + 0.5 * width, y);
+        p.curveTo(x + PCV * width, y, x + width, y + NCV * height, x + width, y + 0.5 * height);
+        p.closePath();
+        p.fill(g);
+    }
+
+    /**
+     * Graphics.fillPolygon() of n packed vertices offset by (dx, dy),
+     * without allocating. Edges are rasterized as by Graphics2D.fill(),
+     * which without antialiasing can put an edge a pixel away from where
+     * fillPolygon() would.
+     */
+    static void fillPolygon(Graphics2D g, int[] xy, int offset, int n, int dx, int dy)
+    {
+        FillPath p = PATH.get().begin(g);
+        p.moveTo(xy[offset] + dx, xy[offset + 1] + dy);
+        for (int i = 1; i < n; i++) {
+            p.lineTo(xy[offset + i * 2] + dx, xy[offset + i * 2 + 1] + dy);
+        }
+        p.closePath();
+        p.fill(g);
+    }
+
+    private void unpack(int[] xy, int offset, int n, int dx, int dy)
+    {
+        if (xs.length < n) {
+            xs = new int[Math.max(n, xs.length * 2)];
+            ys = new int[xs.length];
+        }
+        for (int i = 0; i < n; i++) {
+            xs[i] = xy[offset + i * 2] + dx;
+            ys[i] = xy[offset + i * 2 + 1] + dy;
+        }
+    }
+
+    /**
+     * A path that is refilled for every shape. Java2D's plain pipeline
+     * reads a Path2D.Float's arrays directly, so that's what is filled
+     * then. The antialiased one asks the shape for a PathIterator, which
+     * a Path2D makes anew every time, so then the segments are kept here
+     * and this path is its own iterator.
+     */
+    static final class FillPath implements Shape, PathIterator
+    {
+        private final Path2D.Float plain = new Path2D.Float(Path2D.WIND_EVEN_ODD);
+        private boolean antialiased;
+        // for the antialiased pipeline: segment types, and their points
+        private byte[] types = new byte[16];
+        private float[] coords = new float[64];
+        private int segments;
+        private int floats;
+        // where the iteration is
+        private int segment;
+        private int next;
+        private AffineTransform at;
+
+        /// start a new path, to be filled into g
+        FillPath begin(Graphics2D g)
+        {
+            antialiased = g.getRenderingHint(RenderingHints.KEY_ANTIALIASING) == RenderingHints.VALUE_ANTIALIAS_ON;
+            plain.reset();
+            segments = 0;
+            floats = 0;
+            return this;
+        }
+
+        void moveTo(double x, double y)
+        {
+            if (antialiased) {
+                add(SEG_MOVETO, x, y, 0, 0, 0, 0);
+            } else {
+                plain.moveTo(x, y);
+            }
+        }
+
+        void lineTo(double x, double y)
+        {
+            if (antialiased) {
+                add(SEG_LINETO, x, y, 0, 0, 0, 0);
+            } else {
+                plain.lineTo(x, y);
+            }
+        }
+
+        void curveTo(double x1, double y1, double x2, double y2, double x3, double y3)
+        {
+            if (antialiased) {
+                add(SEG_CUBICTO, x1, y1, x2, y2, x3, y3);
+            } else {
+                plain.curveTo(x1, y1, x2, y2, x3, y3);
+            }
+        }
+
+        void closePath()
+        {
+            if (antialiased) {
+                add(SEG_CLOSE, 0, 0, 0, 0, 0, 0);
+            } else {
+                plain.closePath();
+            }
+        }
+
+        void fill(Graphics2D g)
+        {
+            g.fill(antialiased ? this : plain);
+        }
+
+        private void add(int type, double x1, double y1, double x2, double y2, double x3, double y3)
+        {
+            if (segments == types.length) {
+                types = Arrays.copyOf(types, segments * 2);
+            }
+            if (floats + 6 > coords.length) {
+                coords = Arrays.copyOf(coords, coords.length * 2);
+            }
+            types[segments++] = (byte) type;
+            coords[floats] = (float) x1;
+            coords[floats + 1] = (float) y1;
+            coords[floats + 2] = (float) x2;
+            coords[floats + 3] = (float) y2;
+            coords[floats + 4] = (float) x3;
+            coords[floats + 5] = (float) y3;
+            floats += points(type) * 2;
+        }
+
+        private static int points(int type)
+        {
+            return switch (type) {
+                case SEG_MOVETO, SEG_LINETO -> 1;
+                case SEG_QUADTO -> 2;
+                case SEG_CUBICTO -> 3;
+                default -> 0;
+            };
+        }
+
+        @Override
+        public PathIterator getPathIterator(AffineTransform at)
+        {
+            if (!antialiased) {
+                return plain.getPathIterator(at);
+            }
+            this.at = at;
+            segment = 0;
+            next = 0;
+            return this;
+        }
+
+        @Override
+        public PathIterator getPathIterator(AffineTransform at, double flatness)
+        {
+            return new FlatteningPathIterator(getPathIterator(at), flatness);
+        }
+
+        @Override
+        public int getWindingRule()
+        {
+            return WIND_EVEN_ODD;
+        }
+
+        @Override
+        public boolean isDone()
+        {
+            return segment >= segments;
+        }
+
+        @Override
+        public void next()
+        {
+            next += points(types[segment]) * 2;
+            segment++;
+        }
+
+        @Override
+        public int currentSegment(float[] out)
+        {
+            int type = types[segment];
+            if (at == null) {
+                System.arraycopy(coords, next, out, 0, points(type) * 2);
+            } else {
+                at.transform(coords, next, out, 0, points(type));
+            }
+            return type;
+        }
+
+        @Override
+        public int currentSegment(double[] out)
+        {
+            int type = types[segment];
+            if (at == null) {
+                for (int i = 0; i < points(type) * 2; i++) {
+                    out[i] = coords[next + i];
+                }
+            } else {
+                at.transform(coords, next, out, 0, points(type));
+            }
+            return type;
+        }
+
+        // the rest of Shape, which filling doesn't use, is answered by a copy
+
+        private Shape copy()
+        {
+            Path2D.Float p = new Path2D.Float(WIND_EVEN_ODD);
+            p.append(getPathIterator(null), false);
+            return p;
+        }
+
+        @Override
+        public Rectangle getBounds()
+        {
+            return copy().getBounds();
+        }
+
+        @Override
+        public Rectangle2D getBounds2D()
+        {
+            return copy().getBounds2D();
+        }
+
+        @Override
+        public boolean contains(double x, double y)
+        {
+            return copy().contains(x, y);
+        }
+
+        @Override
+        public boolean contains(Point2D p)
+        {
+            return copy().contains(p);
+        }
+
+        @Override
+        public boolean intersects(double x, double y, double w, double h)
+        {
+            return copy().intersects(x, y, w, h);
+        }
+
+        @Override
+        public boolean intersects(Rectangle2D r)
+        {
+            return copy().intersects(r);
+        }
+
+        @Override
+        public boolean contains(double x, double y, double w, double h)
+        {
+            return copy().contains(x, y, w, h);
+        }
+
+        @Override
+        public boolean contains(Rectangle2D r)
+        {
+            return copy().contains(r);
+        }
+    }
+}
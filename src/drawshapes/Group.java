@@ -0,0 +1,351 @@
+package drawshapes;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Point;
+import java.util.List;
+
+/**
+ * A group of shapes that is moved, scaled, recolored and selected as one.
+ *
+ * The children are kept in the group's own coordinates, and the group's
+ * anchor point is where that origin sits in the scene. Moving a group
+ * only moves the anchor (and the cached bounds); the children aren't
+ * touched. The bounding box of all the children is cached and only
+ * recomputed after a scale, so drawing, hit-testing and drag-selection
+ * can skip a whole group, nested groups included, when its box misses.
+ *
+ * Like every other shape, a group in a published scene isn't changed by
+ * Scene's edits; they work on a copy(), which copies the children.
+ */
+public class Group extends AbstractShape
+{
+    private final IShape[] children;
+    private boolean boundsDirty = true;
+
+    /**
+     * Group the given shapes, which stay where they are.
+     * @param shapes
+     */
+    public Group(List<IShape> shapes)
+    {
+        this(new Point(0, 0), shapes.toArray(new IShape[0]));
+    }
+
+    /**
+     * @param origin where the children's (0, 0) is in the scene
+     * @param children in the group's coordinates; owned by the group from now on
+     */
+    Group(Point origin, IShape[] children)
+    {
+        super(origin);
+        this.children = children;
+        this.color = children.length > 0 ? children[0].getColor() : Color.BLACK;
+    }
+
+    public int size()
+    {
+        return children.length;
+    }
+
+    /// child i, in the group's coordinates
+    IShape child(int i)
+    {
+        return children[i];
+    }
+
+    /**
+     * The children as they are in the scene (moved by the group's offset),
+     * as new shapes.
+     * @return
+     */
+    public IShape[] ungroup()
+    {
+        IShape[] result = new IShape[children.length];
+        for (int i = 0; i < children.length; i++) {
+            IShape c = Scene.copyOf(children[i]);
+            c.move(anchorPoint.x, anchorPoint.y);
+            result[i] = c;
+        }
+        return result;
+    }
+
+    @Override
+    public BoundingBox getBoundingBox()
+    {
+        if (boundsDirty) {
+            int left = Integer.MAX_VALUE, right = Integer.MIN_VALUE;
+            int top = Integer.MAX_VALUE, bottom = Integer.MIN_VALUE;
+            for (IShape c : children) {
+                BoundingBox b = c.getBoundingBox();
+                left = Math.min(left, b.getLeft());
+                right = Math.max(right, b.getRight());
+                top = Math.min(top, b.getTop());
+                bottom = Math.max(bottom, b.getBottom());
+            }
+            if (children.length == 0) {
+                left = right = top = bottom = 0;
+            }
+            left += anchorPoint.x;
+            right += anchorPoint.x;
+            top += anchorPoint.y;
+            bottom += anchorPoint.y;
+            if (boundingBox == null) {
+                setBoundingBox(left, right, top, bottom);
+            } else {
+                boundingBox.set(left, right, top, bottom);
+            }
+            boundsDirty = false;
+        }
+        return boundingBox;
+    }
+
+    @Override
+    public void draw(Graphics g)
+    {
+        BoundingBox b = getBoundingBox();
+        // +1: odd-sized children draw a pixel past their boxes
+        if (!g.hitClip(b.getLeft(), b.getTop(), b.getWidth() + 1, b.getHeight() + 1)) {
+            return;
+        }
+        g.translate(anchorPoint.x, anchorPoint.y);
+        for (IShape c : children) {
+            c.draw(g);
+        }
+        g.translate(-anchorPoint.x, -anchorPoint.y);
+    }
+
+    @Override
+    public void render(Renderer r)
+    {
+        BoundingBox b = getBoundingBox();
+        // +1: odd-sized children draw a pixel past their boxes
+        if (!r.beginGroup(b.getLeft(), b.getTop(), b.getWidth() + 1, b.getHeight() + 1)) {
+            return;
+        }
+        Renderer moved = r.translated(anchorPoint.x, anchorPoint.y);
+        for (IShape c : children) {
+            c.render(moved);
+        }
+        r.endGroup();
+    }
+
+    @Override
+    public boolean contains(Point point)
+    {
+        if (!getBoundingBox().contains(point)) {
+            return false;
+        }
+        Point local = new Point(point.x - anchorPoint.x, point.y - anchorPoint.y);
+        for (IShape c : children) {
+            if (c.contains(local)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean intersects(IShape other)
+    {
+        if (this == other || other == null) {
+            return false;
+        }
+        BoundingBox b = other.getBoundingBox();
+        return overlaps(b.getLeft(), b.getTop(), b.getRight(), b.getBottom());
+    }
+
+    /// does the box (in the coordinates the group is in) overlap any child's box?
+    private boolean overlaps(int left, int top, int right, int bottom)
+    {
+        if (!getBoundingBox().intersects(left, top, right, bottom)) {
+            return false;
+        }
+        left -= anchorPoint.x;
+        right -= anchorPoint.x;
+        top -= anchorPoint.y;
+        bottom -= anchorPoint.y;
+        for (IShape c : children) {
+            if (c instanceof Group g ? g.overlaps(left, top, right, bottom)
+                    : c.getBoundingBox().intersects(left, top, right, bottom)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /// the whole group is one selection; children are drawn the same way
+    @Override
+    public void setSelected(boolean b)
+    {
+        super.setSelected(b);
+        for (IShape c : children) {
+            c.setSelected(b);
+        }
+    }
+
+    @Override
+    public void setColor(Color color)
+    {
+        super.setColor(color);
+        for (IShape c : children) {
+            c.setColor(color);
+        }
+    }
+
+    @Override
+    public void setAnchorPoint(Point p)
+    {
+        move(p.x - anchorPoint.x, p.y - anchorPoint.y);
+    }
+
+    /// one translation for the whole group
+    @Override
+    public void move(int x, int y)
+    {
+        getBoundingBox();
+        super.move(x, y);
+    }
+
+    @Override
+    public void scaleUp(double scale)
+    {
+        scaleChildren(scale);
+    }
+
+    @Override
+    public void scaleDown(double scale)
+    {
+        scaleChildren(scale);
+    }
+
+    /// scale each child about the center of the group
+    private void scaleChildren(double factor)
+    {
+        BoundingBox b = getBoundingBox();
+        int cx = (b.getLeft() + b.getRight()) / 2 - anchorPoint.x;
+        int cy = (b.getTop() + b.getBottom()) / 2 - anchorPoint.y;
+        for (IShape c : children) {
+            Point p = c.getAnchorPoint();
+            c.move((int) Math.round((p.x - cx) * (factor - 1)), (int) Math.round((p.y - cy) * (factor - 1)));
+            Scene.scale(c, factor);
+        }
+        boundsDirty = true;
+        version++;
+    }
+
+    @Override
+    public IShape copy()
+    {
+        IShape[] copies = new IShape[children.length];
+        for (int i = 0; i < children.length; i++) {
+            copies[i] = Scene.copyOf(children[i]);
+        }
+        Group g = new Group(new Point(anchorPoint), copies);
+        g.color = color;
+        return g;
+    }
+
+    /**
+     * A group line, "GROUP x y n selected", followed by a line for each
+     * of its n children, in the group's coordinates.
+     */
+    @Override
+    public String toString()
+    {
+        StringBuilder s = new StringBuilder();
+        s.append(String.format("GROUP %d %d %d %s", anchorPoint.x, anchorPoint.y, children.length, selected));
+        for (IShape c : children) {
+            s.append("\n").append(c.toString());
+        }
+        return s.toString();
+    }
+
+    /// passes everything on, moved by an offset
+    static final class Translated implements Renderer
+    {
+        private final Renderer r;
+        private int dx;
+        private int dy;
+
+        Translated(Renderer r, int dx, int dy)
+        {
+            this.r = r;
+            this.dx = dx;
+            this.dy = dy;
+        }
+
+        /// reuse this wrapper for another offset; only its owner may do this
+        void moveTo(int dx, int dy)
+        {
+            this.dx = dx;
+            this.dy = dy;
+        }
+
+        @Override
+        public Renderer translated(int x, int y)
+        {
+            return r.translated(x + dx, y + dy);
+        }
+
+        @Override
+        public void setColor(int argb)
+        {
+            r.setColor(argb);
+        }
+
+        @Override
+        public void fillRect(int x, int y, int width, int height)
+        {
+            r.fillRect(x + dx, y + dy, width, height);
+        }
+
+        @Override
+        public void fillOval(int x, int y, int width, int height)
+        {
+            r.fillOval(x + dx, y + dy, width, height);
+        }
+
+        @Override
+        public void drawRect(int x, int y, int width, int height)
+        {
+            r.drawRect(x + dx, y + dy, width, height);
+        }
+
+        @Override
+        public void fillPolygon(int[] xy, int offset, int n, int dx, int dy)
+        {
+            r.fillPolygon(xy, offset, n, dx + this.dx, dy + this.dy);
+        }
+
+        @Override
+        public void drawPolyline(int[] xy, int offset, int n, int dx, int dy)
+        {
+            r.drawPolyline(xy, offset, n, dx + this.dx, dy + this.dy);
+        }
+
+        @Override
+        public void drawImage(int id, int x, int y, int width, int height)
+        {
+            r.drawImage(id, x + dx, y + dy, width, height);
+        }
+
+        @Override
+        public void drawGlyphs(GlyphRun run, int x, int y)
+        {
+            r.drawGlyphs(run, x + dx, y + dy);
+        }
+
+        @Override
+        public boolean beginGroup(int x, int y, int width, int height)
+        {
+            return r.beginGroup(x + dx, y + dy, width, height);
+        }
+
+        @Override
+        public void endGroup()
+        {
+            r.endGroup();
+        }
+    }
+}
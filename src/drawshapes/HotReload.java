@@ -0,0 +1,247 @@
+package drawshapes;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import javax.swing.SwingUtilities;
+
+/**
+ * Watches the open scene file and reloads it when another program
+ * changes it.
+ *
+ * The file is parsed on the watcher thread and matched against a
+ * snapshot of the scene. A shape in the file that has the same content
+ * as a shape already in the scene (first at the same position, then
+ * anywhere, by content hash) keeps the existing IShape object. That
+ * object keeps its selection and its DisplayList segment. Only shapes
+ * that really changed are new objects. The result is applied on the EDT
+ * as a single undoable edit.
+ */
+public class HotReload
+{
+    /**
+     * What a reload changed.
+     */
+    public static class Result {
+        final List<IShape> merged;
+        final long baseVersion;
+        public final int kept;
+        public final int moved;
+        public final int added;
+        public final int removed;
+
+        Result(List<IShape> merged, long baseVersion, int kept, int moved, int added, int removed) {
+            this.merged = merged;
+            this.baseVersion = baseVersion;
+            this.kept = kept;
+            this.moved = moved;
+            this.added = added;
+            this.removed = removed;
+        }
+
+        /// true if the file has exactly the shapes the scene already has
+        public boolean isUnchanged() {
+            return moved == 0 && added == 0 && removed == 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("kept=%d moved=%d added=%d removed=%d", kept, moved, added, removed);
+        }
+    }
+
+    /// wait this long after a change for the writer to finish
+    private static final long SETTLE_MILLIS = 100;
+
+    private final Scene scene;
+    private final File file;
+    private final Runnable beforeApply;
+    private final Consumer<Result> afterApply;
+    private WatchService watcher;
+    private Thread thread;
+
+    /**
+     * @param scene
+     * @param file the scene file to watch
+     * @param beforeApply run on the EDT just before a reload changes the scene (e.g. to push an undo entry)
+     * @param afterApply run on the EDT just after
+     */
+    public HotReload(Scene scene, File file, Runnable beforeApply, Consumer<Result> afterApply)
+    {
+        this.scene = scene;
+        this.file = file.getAbsoluteFile();
+        this.beforeApply = beforeApply;
+        this.afterApply = afterApply;
+    }
+
+    public void start() throws IOException
+    {
+        watcher = FileSystems.getDefault().newWatchService();
+        file.getParentFile().toPath().register(watcher,
+                StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        thread = new Thread(this::watch, "DrawShapes-hot-reload");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void stop()
+    {
+        try {
+            if (watcher != null) {
+                // wakes the watcher thread with ClosedWatchServiceException
+                watcher.close();
+            }
+        } catch (IOException e) {
+            System.out.println("hot reload: " + e);
+        }
+    }
+
+    private void watch()
+    {
+        Path name = file.toPath().getFileName();
+        try {
+            while (true) {
+                WatchKey key = watcher.take();
+                boolean changed = touches(key, name);
+                // editors often write a file in several steps; wait for it to settle
+                while ((key = watcher.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    changed |= touches(key, name);
+                }
+                if (changed) {
+                    reload();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // stopped
+        }
+    }
+
+    private static boolean touches(WatchKey key, Path name)
+    {
+        boolean found = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (name.equals(event.context())) {
+                found = true;
+            }
+        }
+        key.reset();
+        return found;
+    }
+
+    private void reload()
+    {
+        ShapeVector incoming;
+        try (SceneReader reader = new SceneReader(file)) {
+            incoming = reader.readAll();
+        } catch (FileNotFoundException | NoSuchElementException | IllegalArgumentException | UnsupportedOperationException e) {
+            // half-written, bad or deleted; the next change will trigger another reload
+            System.out.println("hot reload skipped: " + e);
+            return;
+        }
+        Result result = merge(scene.getShapes(), incoming);
+        if (result.isUnchanged()) {
+            return;
+        }
+        SwingUtilities.invokeLater(() -> apply(result, incoming));
+    }
+
+    private void apply(Result result, List<IShape> incoming)
+    {
+        beforeApply.run();
+        Result applied = result;
+        if (!scene.replaceIf(result.baseVersion, result.merged)) {
+            // the scene was edited while we were parsing; match again against what it is now
+            synchronized (scene) {
+                applied = merge(scene.getShapes(), incoming);
+                scene.replaceIf(applied.baseVersion, applied.merged);
+            }
+        }
+        System.out.println("reloaded " + file.getName() + ": " + applied);
+        afterApply.accept(applied);
+    }
+
+    /**
+     * Match the shapes read from a file against the shapes in the scene.
+     * Shapes with unchanged content are reused; others are new.
+     *
+     * @param current the scene's shapes
+     * @param incoming the shapes read from the file, in file order
+     * @return the shapes the scene should have, in file order
+     */
+    static Result merge(ShapeVector current, List<IShape> incoming)
+    {
+        int n = incoming.size();
+        IShape[] merged = new IShape[n];
+        boolean[] used = new boolean[current.size()];
+        int kept = 0;
+        int moved = 0;
+        int added = 0;
+
+        // same content at the same position
+        for (int i = 0; i < Math.min(n, current.size()); i++) {
+            if (ShapeCodec.sameContent(current.get(i), incoming.get(i))) {
+                merged[i] = current.get(i);
+                used[i] = true;
+                kept++;
+            }
+        }
+
+        // same content somewhere else
+        Map<Long, ArrayDeque<Integer>> byHash = new HashMap<>();
+        for (int i = 0; i < current.size(); i++) {
+            if (!used[i]) {
+                byHash.computeIfAbsent(ShapeCodec.contentHash(current.get(i)), k -> new ArrayDeque<>()).add(i);
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            if (merged[i] != null) {
+                continue;
+            }
+            IShape s = incoming.get(i);
+            ArrayDeque<Integer> candidates = byHash.get(ShapeCodec.contentHash(s));
+            Integer match = null;
+            if (candidates != null) {
+                for (Integer c : candidates) {
+                    if (ShapeCodec.sameContent(current.get(c), s)) {
+                        match = c;
+                        break;
+                    }
+                }
+            }
+            if (match != null) {
+                candidates.remove(match);
+                merged[i] = current.get(match);
+                used[match] = true;
+                moved++;
+            } else {
+                // a changed shape in the same slot keeps its selection
+                if (i < current.size() && !used[i] && current.get(i).getClass() == s.getClass()) {
+                    s.setSelected(current.get(i).isSelected());
+                }
+                merged[i] = s;
+                added++;
+            }
+        }
+        int removed = current.size() - kept - moved;
+        List<IShape> list = new ArrayList<>(n);
+        for (IShape s : merged) {
+            list.add(s);
+        }
+        return new Result(list, current.version(), kept, moved, added, removed);
+    }
+}
@@ -24,6 +24,22 @@ public interface IShape
      * @param g the Graphics object from the Java Swing GUI framework
      */
     public void draw(Graphics g);
+    /**
+     * Describe this shape to the given Renderer. This should draw
+     * exactly what draw(Graphics) draws, but without depending on AWT,
+     * so the shape can be put in a DisplayList or exported.
+     * 
+     * @param r
+     */
+    public void render(Renderer r);
+    /**
+     * Return a number that changes every time anything that affects
+     * how this shape is drawn changes (position, size, color, selection).
+     * Used to tell which shapes a DisplayList needs to re-record.
+     * 
+     * @return
+     */
+    public int getVersion();
     /**
      * Does this shape intersect any part of the other shape?
      * 
@@ -0,0 +1,356 @@
+package drawshapes;
+
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Decoded images for ImageShape, shared by every scene.
+ *
+ * Each image file gets a small int id, so it can go through a Renderer
+ * and into a DisplayList like any other argument. Decoding happens on
+ * background threads: Scene queues an image with load() when its shape
+ * is added, so the pixels are usually ready by the first frame. get()
+ * never blocks: if the image isn't decoded yet it returns null (queueing
+ * it, if it wasn't), and the listeners are told when it's ready. Headless
+ * renderers, which get no second frame, set the WAIT_FOR_IMAGES hint on
+ * their Graphics instead: then a miss decodes the image on the drawing
+ * thread (or waits for the decoder thread already on it), and the level
+ * drawn is held by the caller, so a later eviction can't take it away.
+ *
+ * A decoded image is kept as a chain of mip levels, each half the size
+ * of the one before, and get() hands back the smallest level that is
+ * still at least the size it'll be drawn at, so drawing never shrinks
+ * an image by more than half. The chains are evicted least recently
+ * used first once their pixels take more than the byte budget
+ * (-Ddrawshapes.imagecache.mb, 64 by default).
+ */
+public class ImageCache
+{
+    /// mip levels stop once the next would be smaller than this on either side
+    static final int MIN_LEVEL_SIZE = 8;
+
+    private static final ImageCache SHARED = new ImageCache(Long.getLong("drawshapes.imagecache.mb", 64) << 20, 2);
+
+    /**
+     * Rendering hint for Graphics that get no second frame: set to
+     * Boolean.TRUE, images not decoded yet are decoded before they're drawn
+     * rather than drawn as outlines.
+     */
+    public static final RenderingHints.Key WAIT_FOR_IMAGES = new RenderingHints.Key(0x44530001)
+    {
+        @Override
+        public boolean isCompatibleValue(Object value)
+        {
+            return value instanceof Boolean;
+        }
+    };
+
+    /// the levels of one decoded image, largest first
+    private static final class Mipmap
+    {
+        final BufferedImage[] levels;
+        final long bytes;
+
+        Mipmap(BufferedImage[] levels)
+        {
+            this.levels = levels;
+            long b = 0;
+            for (BufferedImage l : levels) {
+                b += 4L * l.getWidth() * l.getHeight();
+            }
+            this.bytes = b;
+        }
+
+        BufferedImage forSize(int width, int height)
+        {
+            int i = 0;
+            while (i + 1 < levels.length
+                    && levels[i + 1].getWidth() >= width && levels[i + 1].getHeight() >= height) {
+                i++;
+            }
+            return levels[i];
+        }
+    }
+
+    private final long budget;
+    private final ExecutorService decoder;
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+    private final Map<File, Integer> ids = new ConcurrentHashMap<>();
+    private final List<File> files = new ArrayList<>();
+    // guarded by this; in access order, so the eldest is the least recently drawn
+    private final LinkedHashMap<Integer, Mipmap> images = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<Integer> loading = new HashSet<>();
+    private final Set<Integer> failed = new HashSet<>();
+    private long used;
+
+    /**
+     * @param budget bytes of decoded pixels to keep
+     * @param threads number of decoding threads
+     */
+    public ImageCache(long budget, int threads)
+    {
+        this.budget = budget;
+        this.decoder = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "DrawShapes-image-decoder");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+    }
+
+    public static ImageCache shared()
+    {
+        return SHARED;
+    }
+
+    /**
+     * The id of the given image file, the same for every call with the same file.
+     * @param file
+     * @return
+     */
+    public int id(File file)
+    {
+        File key = file.getAbsoluteFile();
+        return ids.computeIfAbsent(key, f -> {
+            synchronized (files) {
+                files.add(f);
+                return files.size() - 1;
+            }
+        });
+    }
+
+    public File file(int id)
+    {
+        synchronized (files) {
+            return files.get(id);
+        }
+    }
+
+    /**
+     * Run the listener (on a decoder thread) each time an image finishes decoding.
+     * @param listener
+     */
+    public void addListener(Runnable listener)
+    {
+        listeners.add(listener);
+    }
+
+    /**
+     * The decoded image to draw at the given size, or null if it isn't
+     * ready yet (in which case it starts decoding) or can't be read.
+     * @param id
+     * @param width
+     * @param height
+     * @return
+     */
+    public BufferedImage get(int id, int width, int height)
+    {
+        synchronized (this) {
+            Mipmap m = images.get(id);
+            if (m != null) {
+                return m.forSize(width, height);
+            }
+        }
+        load(id);
+        return null;
+    }
+
+    /**
+     * Start decoding the image, unless it's decoded, being decoded, or
+     * already failed. Doesn't wait.
+     * @param id
+     */
+    public void load(int id)
+    {
+        synchronized (this) {
+            if (images.containsKey(id) || failed.contains(id) || !loading.add(id)) {
+                return;
+            }
+        }
+        decoder.execute(() -> decode(id));
+    }
+
+    /**
+     * get() that decodes the image on this thread if it isn't ready, or
+     * waits for the decoder thread if one is already on it. Returns null
+     * only if the image can't be read, or if the thread is interrupted
+     * (which leaves it interrupted).
+     * @param id
+     * @param width
+     * @param height
+     * @return
+     */
+    public BufferedImage getNow(int id, int width, int height)
+    {
+        synchronized (this) {
+            while (true) {
+                Mipmap m = images.get(id);
+                if (m != null) {
+                    return m.forSize(width, height);
+                }
+                if (failed.contains(id)) {
+                    return null;
+                }
+                if (loading.add(id)) {
+                    break;
+                }
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            }
+        }
+        Mipmap m = decode(id);
+        return m == null ? null : m.forSize(width, height);
+    }
+
+    /**
+     * get() for drawing into the given Graphics: the level is picked for
+     * the size the rectangle comes out on the device, after the
+     * Graphics' transform, so an export at a scale above 1 doesn't
+     * stretch a small level. If the Graphics has WAIT_FOR_IMAGES set this
+     * is getNow() instead, and only returns null for an unreadable image.
+     * @param g
+     * @param id
+     * @param width in the Graphics' own units
+     * @param height
+     * @return
+     */
+    public BufferedImage get(Graphics g, int id, int width, int height)
+    {
+        if (g instanceof Graphics2D g2) {
+            AffineTransform t = g2.getTransform();
+            if (!t.isIdentity()) {
+                width = (int) Math.ceil(width * Math.hypot(t.getScaleX(), t.getShearY()));
+                height = (int) Math.ceil(height * Math.hypot(t.getShearX(), t.getScaleY()));
+            }
+            if (Boolean.TRUE.equals(g2.getRenderingHint(WAIT_FOR_IMAGES))) {
+                return getNow(id, width, height);
+            }
+        }
+        return get(id, width, height);
+    }
+
+    /// is the image decoded and cached?
+    public synchronized boolean isLoaded(int id)
+    {
+        return images.containsKey(id);
+    }
+
+    /// bytes of pixels in the cache
+    public synchronized long getUsedBytes()
+    {
+        return used;
+    }
+
+    /// decode the image and cache it; the caller has added id to loading
+    private Mipmap decode(int id)
+    {
+        File f = file(id);
+        Mipmap m = null;
+        try {
+            BufferedImage img = ImageIO.read(f);
+            if (img == null) {
+                System.out.println("Not an image I can read: " + f);
+            } else {
+                m = new Mipmap(mipmaps(img));
+            }
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Couldn't read image " + f + ": " + e);
+        }
+        synchronized (this) {
+            loading.remove(id);
+            notifyAll();
+            if (m == null) {
+                failed.add(id);
+                return null;
+            }
+            images.put(id, m);
+            used += m.bytes;
+            // the image just added is the newest, so it goes last even if
+            // it's bigger than the whole budget on its own
+            Iterator<Mipmap> it = images.values().iterator();
+            while (used > budget && images.size() > 1) {
+                used -= it.next().bytes;
+                it.remove();
+            }
+        }
+        for (Runnable r : listeners) {
+            r.run();
+        }
+        return m;
+    }
+
+    /// level 0 in a format that's quick to draw, then halvings of it
+    private static BufferedImage[] mipmaps(BufferedImage img)
+    {
+        List<BufferedImage> levels = new ArrayList<>();
+        BufferedImage level = scaled(img, img.getWidth(), img.getHeight());
+        levels.add(level);
+        while (level.getWidth() / 2 >= MIN_LEVEL_SIZE && level.getHeight() / 2 >= MIN_LEVEL_SIZE) {
+            level = scaled(level, level.getWidth() / 2, level.getHeight() / 2);
+            levels.add(level);
+        }
+        return levels.toArray(new BufferedImage[0]);
+    }
+
+    private static BufferedImage scaled(BufferedImage src, int width, int height)
+    {
+        BufferedImage dst = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g = dst.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(src, 0, 0, width, height, null);
+        g.dispose();
+        return dst;
+    }
+
+    /**
+     * The pixel size of an image file, read from its header without
+     * decoding it, or null if it can't be read.
+     * @param file
+     * @return
+     */
+    public static Dimension size(File file)
+    {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file)) {
+            if (in == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in);
+                return new Dimension(reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package drawshapes;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.io.File;
+
+/**
+ * A bitmap image from a file, stretched over a rectangle.
+ *
+ * The shape only holds the file's path; the pixels live in the shared
+ * ImageCache, which decodes them in the background, starting when the
+ * shape is added to a Scene (or first drawn, if it never is). Making an
+ * ImageShape, as every reader of scene files does, decodes nothing.
+ * Until the pixels are ready (or if the file can't be read) an outline
+ * is drawn instead.
+ * Images have no color of their own: getColor() is the outline color,
+ * and a selected image is drawn with a dark shade over it.
+ */
+public class ImageShape extends Rectangle
+{
+    static final Color PLACEHOLDER = Color.GRAY;
+    /// drawn over a selected image
+    static final int SHADE = 0x55000000;
+    private static final Color SHADE_COLOR = new Color(SHADE, true);
+
+    private final String path;
+    private final File dir;
+    private final File file;
+    private final int image;
+
+    /**
+     * @param center
+     * @param width
+     * @param height
+     * @param path the image file, as written in the scene file
+     * @param dir what a relative path is relative to, or null for the working directory
+     */
+    public ImageShape(Point center, int width, int height, String path, File dir)
+    {
+        super(center, width, height, PLACEHOLDER);
+        this.path = path;
+        this.dir = dir;
+        File f = new File(path);
+        this.file = f.isAbsolute() || dir == null ? f : new File(dir, path);
+        this.image = ImageCache.shared().id(file);
+    }
+
+    /// the path as given, which may be relative
+    public String getPath()
+    {
+        return path;
+    }
+
+    /// the directory a relative path is relative to, or null
+    public File getDir()
+    {
+        return dir;
+    }
+
+    public File getFile()
+    {
+        return file;
+    }
+
+    /// the file's id in the shared ImageCache
+    int getImage()
+    {
+        return image;
+    }
+
+    /// images have no color, so this does nothing
+    @Override
+    public void setColor(Color color)
+    {
+    }
+
+    @Override
+    public void draw(Graphics g)
+    {
+        int x = anchorPoint.x - width/2;
+        int y = anchorPoint.y - height/2;
+        BufferedImage img = ImageCache.shared().get(g, image, width, height);
+        if (img == null) {
+            g.setColor(color);
+            g.drawRect(x, y, width, height);
+        } else {
+            g.drawImage(img, x, y, width, height, null);
+        }
+        if (selected) {
+            g.setColor(SHADE_COLOR);
+            g.fillRect(x, y, width, height);
+        }
+    }
+
+    @Override
+    public void render(Renderer r)
+    {
+        int x = anchorPoint.x - width/2;
+        int y = anchorPoint.y - height/2;
+        r.setColor(color.getRGB());
+        r.drawImage(image, x, y, width, height);
+        if (selected) {
+            r.setColor(SHADE);
+            r.fillRect(x, y, width, height);
+        }
+    }
+
+    @Override
+    public IShape copy()
+    {
+        return new ImageShape(new Point(anchorPoint), width, height, path, dir);
+    }
+
+    /**
+     * "IMAGE x y width height path selected", with the path made one
+     * word by Util.toWord().
+     */
+    @Override
+    public String toString()
+    {
+        return String.format("IMAGE %d %d %d %d %s %s",
+                anchorPoint.x,
+                anchorPoint.y,
+                width,
+                height,
+                Util.toWord(path),
+                selected);
+    }
+}
@@ -0,0 +1,61 @@
+package drawshapes;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of ints, for collecting shape positions from index
+ * searches without boxing every one.
+ */
+final class IntList
+{
+    private int[] values;
+    private int size;
+
+    IntList()
+    {
+        this(16);
+    }
+
+    IntList(int capacity)
+    {
+        values = new int[Math.max(1, capacity)];
+    }
+
+    void add(int v)
+    {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = v;
+    }
+
+    int get(int i)
+    {
+        return values[i];
+    }
+
+    int size()
+    {
+        return size;
+    }
+
+    void removeLast()
+    {
+        size--;
+    }
+
+    void clear()
+    {
+        size = 0;
+    }
+
+    void sort()
+    {
+        Arrays.sort(values, 0, size);
+    }
+
+    int[] toArray()
+    {
+        return Arrays.copyOf(values, size);
+    }
+}
@@ -0,0 +1,82 @@
+package drawshapes;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+/**
+ * Checks that SceneDiff.merge() round-trips scenes with groups in them:
+ * each case merges a base scene with two edited copies, writes the
+ * result in the scene file format, reads it back, and compares it with
+ * the scene expected. Exits with 1 if any case comes out different.
+ *
+ * <pre>
+ *   java drawshapes.MergeCheck
+ * </pre>
+ */
+public class MergeCheck
+{
+    private static final String GROUP =
+            "GROUP 10 20 2 false\n"
+            + "SQUARE 100 100 20 RED false\n"
+            + "CIRCLE 150 100 30 BLUE false\n";
+    private static final String NESTED =
+            "GROUP 0 0 2 false\n"
+            + "GROUP 5 5 2 false\n"
+            + "SQUARE 40 40 10 RED false\n"
+            + "RECTANGLE 60 40 10 20 GREEN false\n"
+            + "CIRCLE 200 200 16 BLUE false\n";
+    private static final String SQUARE = "SQUARE 300 300 10 GREEN false\n";
+
+    private int failures;
+
+    /**
+     * Merge the three scenes and compare the result with the expected
+     * scene, and the number of conflicts with the expected number.
+     */
+    void check(String name, String base, String ours, String theirs, String expected, int conflicts)
+            throws IOException
+    {
+        SceneDiff.Merge m = SceneDiff.merge(read(base), read(ours), read(theirs));
+        StringWriter out = new StringWriter();
+        SceneDiff.write(m.merged, out);
+        // read it back, so what's compared is what a file would hold
+        StringWriter again = new StringWriter();
+        SceneDiff.write(read(out.toString()), again);
+        boolean ok = again.toString().equals(expected) && m.conflicts.size() == conflicts;
+        if (!ok) {
+            failures++;
+            System.out.println(name + ": FAILED, expected\n" + expected + "with " + conflicts
+                    + " conflicts, got\n" + again + "with " + m.conflicts);
+        } else {
+            System.out.println(name + ": ok");
+        }
+    }
+
+    private static SceneDiff.Records read(String scene)
+    {
+        return SceneDiff.Records.read(new StringReader(scene));
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        MergeCheck check = new MergeCheck();
+        check.check("untouched group, square added", GROUP, GROUP, GROUP + SQUARE, GROUP + SQUARE, 0);
+        check.check("group added on both sides", "", GROUP, GROUP, GROUP, 0);
+        check.check("group moved and member recolored", GROUP,
+                GROUP.replace("GROUP 10 20", "GROUP 15 20"),
+                GROUP.replace("30 BLUE", "30 GREEN"),
+                GROUP.replace("GROUP 10 20", "GROUP 15 20").replace("30 BLUE", "30 GREEN"), 0);
+        check.check("group removed on one side", GROUP + SQUARE, SQUARE, GROUP + SQUARE, SQUARE, 0);
+        check.check("members changed on both sides", GROUP,
+                GROUP.replace("30 BLUE", "30 RED"), GROUP.replace("30 BLUE", "30 GREEN"),
+                GROUP.replace("30 BLUE", "30 RED"), 1);
+        check.check("nested groups, one moved", NESTED + SQUARE,
+                NESTED.replace("GROUP 0 0", "GROUP 30 0") + SQUARE,
+                NESTED + SQUARE.replace("GREEN", "RED"),
+                NESTED.replace("GROUP 0 0", "GROUP 30 0") + SQUARE.replace("GREEN", "RED"), 0);
+        if (check.failures > 0) {
+            System.exit(1);
+        }
+    }
+}
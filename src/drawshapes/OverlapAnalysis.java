@@ -0,0 +1,302 @@
+package drawshapes;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Finds every pair of overlapping shapes in a scene.
+ *
+ * Sweep and prune: the bounding boxes are sorted by their left edge once,
+ * and each box is only compared with the boxes that start before it ends
+ * on the x axis. Pairs whose boxes also overlap on y are then checked with
+ * an exact test for the two shape types (circle/circle by distance,
+ * circle/rectangle by nearest point, rectangle/rectangle by area), so
+ * corners of boxes around circles don't count.
+ *
+ * The sorted boxes are cut into bands of equal count that are swept in
+ * parallel; each band only starts pairs from its own boxes, so no pair is
+ * found twice.
+ *
+ * <pre>
+ *   java drawshapes.OverlapAnalysis file.scene
+ * </pre>
+ */
+public class OverlapAnalysis
+{
+    /// boxes per parallel band; fewer than this and one thread does it all
+    private static final int BAND = 16384;
+
+    /**
+     * The overlapping pairs and the clusters they form.
+     */
+    public static class Result {
+        private final long[] pairs;
+        private final int[] cluster;
+        private final int clusters;
+
+        Result(long[] pairs, int n) {
+            this.pairs = pairs;
+            this.cluster = new int[n];
+            this.clusters = cluster(pairs, n, cluster);
+        }
+
+        public int getPairCount() {
+            return pairs.length;
+        }
+
+        /// the first shape of pair k, by position in the scene
+        public int first(int k) {
+            return (int) (pairs[k] >>> 32);
+        }
+
+        /// the second shape of pair k
+        public int second(int k) {
+            return (int) pairs[k];
+        }
+
+        /// is the shape at this position part of any overlapping pair?
+        public boolean isOverlapping(int position) {
+            return cluster[position] >= 0;
+        }
+
+        public int getClusterCount() {
+            return clusters;
+        }
+
+        /**
+         * Groups of shapes connected by overlaps, by position in the scene.
+         * @return
+         */
+        public List<int[]> getClusters() {
+            IntList[] members = new IntList[clusters];
+            for (int i = 0; i < cluster.length; i++) {
+                int c = cluster[i];
+                if (c >= 0) {
+                    if (members[c] == null) {
+                        members[c] = new IntList(4);
+                    }
+                    members[c].add(i);
+                }
+            }
+            List<int[]> result = new ArrayList<>(clusters);
+            for (IntList m : members) {
+                result.add(m.toArray());
+            }
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d overlapping pairs in %d clusters", pairs.length, clusters);
+        }
+    }
+
+    private OverlapAnalysis() {}
+
+    /**
+     * Find all overlapping pairs among the shapes.
+     * @param shapes
+     * @return
+     */
+    public static Result analyze(List<IShape> shapes)
+    {
+        int n = shapes.size();
+        long[] byLeft = new long[n];
+        for (int i = 0; i < n; i++) {
+            byLeft[i] = ((long) shapes.get(i).getBoundingBox().getLeft() << 32) | i;
+        }
+        Arrays.parallelSort(byLeft);
+
+        // boxes in sweep order, so the inner loop reads memory in order; right
+        // and bottom are one past the box, since an odd-sized shape is drawn
+        // a pixel beyond its bounding box
+        int[] order = new int[n];
+        int[] box = new int[n * 4];
+        for (int k = 0; k < n; k++) {
+            int i = (int) byLeft[k];
+            BoundingBox b = shapes.get(i).getBoundingBox();
+            order[k] = i;
+            box[k * 4] = b.getLeft();
+            box[k * 4 + 1] = b.getTop();
+            box[k * 4 + 2] = b.getRight() + 1;
+            box[k * 4 + 3] = b.getBottom() + 1;
+        }
+
+        int bands = Math.max(1, (n + BAND - 1) / BAND);
+        long[][] found = new long[bands][];
+        IntStream.range(0, bands).parallel().forEach(band -> {
+            found[band] = sweep(shapes, order, box, band * BAND, Math.min(n, (band + 1) * BAND));
+        });
+
+        int total = 0;
+        for (long[] f : found) {
+            total += f.length;
+        }
+        long[] pairs = new long[total];
+        int at = 0;
+        for (long[] f : found) {
+            System.arraycopy(f, 0, pairs, at, f.length);
+            at += f.length;
+        }
+        Arrays.parallelSort(pairs);
+        return new Result(pairs, n);
+    }
+
+    /// sweep starting boxes [from, to); returns pairs packed (low position << 32 | high position)
+    private static long[] sweep(List<IShape> shapes, int[] order, int[] box, int from, int to)
+    {
+        long[] pairs = new long[16];
+        int count = 0;
+        int n = order.length;
+        for (int a = from; a < to; a++) {
+            int right = box[a * 4 + 2];
+            int top = box[a * 4 + 1];
+            int bottom = box[a * 4 + 3];
+            for (int b = a + 1; b < n && box[b * 4] <= right; b++) {
+                if (box[b * 4 + 1] > bottom || box[b * 4 + 3] < top) {
+                    continue;
+                }
+                int i = order[a];
+                int j = order[b];
+                if (!overlaps(shapes.get(i), shapes.get(j))) {
+                    continue;
+                }
+                if (count == pairs.length) {
+                    pairs = Arrays.copyOf(pairs, count * 2);
+                }
+                pairs[count++] = i < j ? ((long) i << 32) | j : ((long) j << 32) | i;
+            }
+        }
+        return Arrays.copyOf(pairs, count);
+    }
+
+    /**
+     * Exact test: do the two shapes, as drawn, share any area?
+     * @param a
+     * @param b
+     * @return
+     */
+    static boolean overlaps(IShape a, IShape b)
+    {
+        if (a instanceof Circle && b instanceof Circle) {
+            Circle c = (Circle) a;
+            Circle d = (Circle) b;
+            double r = c.getDiameter() / 2.0 + d.getDiameter() / 2.0;
+            double dx = centerX(c) - centerX(d);
+            double dy = centerY(c) - centerY(d);
+            return dx * dx + dy * dy < r * r;
+        }
+        if (a instanceof Circle && b instanceof Rectangle) {
+            return overlaps((Circle) a, (Rectangle) b);
+        }
+        if (a instanceof Rectangle && b instanceof Circle) {
+            return overlaps((Circle) b, (Rectangle) a);
+        }
+        if (a instanceof Rectangle && b instanceof Rectangle) {
+            Rectangle r = (Rectangle) a;
+            Rectangle q = (Rectangle) b;
+            return left(r) < left(q) + q.getWidth() && left(q) < left(r) + r.getWidth()
+                    && top(r) < top(q) + q.getHeight() && top(q) < top(r) + r.getHeight();
+        }
+        // shapes without an exact test fall back to their own
+        return a.intersects(b);
+    }
+
+    private static boolean overlaps(Circle c, Rectangle r)
+    {
+        double radius = c.getDiameter() / 2.0;
+        double cx = centerX(c);
+        double cy = centerY(c);
+        // nearest point of the rectangle to the center
+        double nx = Math.max(left(r), Math.min(cx, left(r) + r.getWidth()));
+        double ny = Math.max(top(r), Math.min(cy, top(r) + r.getHeight()));
+        double dx = cx - nx;
+        double dy = cy - ny;
+        return dx * dx + dy * dy < radius * radius;
+    }
+
+    // geometry as draw() lays it out
+    private static double centerX(Circle c)
+    {
+        return c.getAnchorPoint().x - c.getDiameter() / 2 + c.getDiameter() / 2.0;
+    }
+
+    private static double centerY(Circle c)
+    {
+        return c.getAnchorPoint().y - c.getDiameter() / 2 + c.getDiameter() / 2.0;
+    }
+
+    private static int left(Rectangle r)
+    {
+        return r.getAnchorPoint().x - r.getWidth() / 2;
+    }
+
+    private static int top(Rectangle r)
+    {
+        return r.getAnchorPoint().y - r.getHeight() / 2;
+    }
+
+    /// union-find over the pairs; fills cluster[] with a cluster number or -1, returns the count
+    private static int cluster(long[] pairs, int n, int[] cluster)
+    {
+        int[] parent = new int[n];
+        boolean[] paired = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            parent[i] = i;
+        }
+        for (long p : pairs) {
+            paired[(int) (p >>> 32)] = true;
+            paired[(int) p] = true;
+            int a = find(parent, (int) (p >>> 32));
+            int b = find(parent, (int) p);
+            if (a != b) {
+                parent[Math.max(a, b)] = Math.min(a, b);
+            }
+        }
+        Arrays.fill(cluster, -1);
+        int[] number = new int[n];
+        Arrays.fill(number, -1);
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            if (paired[i]) {
+                int root = find(parent, i);
+                if (number[root] < 0) {
+                    number[root] = count++;
+                }
+                cluster[i] = number[root];
+            }
+        }
+        return count;
+    }
+
+    private static int find(int[] parent, int i)
+    {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    /**
+     * @param args a scene file
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length != 1) {
+            System.out.println("usage: OverlapAnalysis file.scene");
+            System.exit(2);
+        }
+        ShapeVector shapes;
+        try (SceneReader reader = new SceneReader(new File(args[0]))) {
+            shapes = reader.readAll();
+        }
+        long start = System.nanoTime();
+        Result result = analyze(shapes);
+        System.out.printf("%d shapes: %s in %.1f ms\n", shapes.size(), result, (System.nanoTime() - start) / 1e6);
+    }
+}
@@ -0,0 +1,214 @@
+package drawshapes;
+
+import java.awt.Color;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Colors, as packed ARGB ints (see Color.getRGB()).
+ *
+ * Every color is interned: color() returns the same Color object for the
+ * same ARGB value, and darker() the same darker Color that selected
+ * shapes are drawn in, so a scene with a million shapes in a few colors
+ * holds a few Color objects. The four named colors are interned as the
+ * Color constants themselves.
+ *
+ * In the text format a color is its name (RED, BLUE, GREEN, YELLOW) or
+ * #RRGGBB, or #AARRGGBB if it isn't opaque. Parsing a token is a hash
+ * lookup; a hex token is only decoded the first time it's seen.
+ *
+ * This class contains static utility methods. It doesn't
+ * make sense to create instances of this class.
+ */
+public class Palette
+{
+    private static final Map<String, Color> NAMED = new HashMap<>();
+    private static final Map<Integer, String> NAMES = new HashMap<>();
+    private static final ConcurrentHashMap<Integer, Color> colors = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<Integer, Color> darker = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Color> tokens = new ConcurrentHashMap<>();
+    /// stop remembering hex tokens past this many, so a file of random colors can't fill memory
+    private static final int MAX_TOKENS = 4096;
+    // direct-mapped in front of darker: looking an int up in the map boxes
+    // it, and darker() runs for every selected shape on every frame
+    private static final int RECENT_BITS = 6;
+    private static final Darker[] recent = new Darker[1 << RECENT_BITS];
+
+    /// one entry of recent; immutable, so it's safe to share between threads without locks
+    private static final class Darker
+    {
+        final int argb;
+        final Color color;
+
+        Darker(int argb, Color color)
+        {
+            this.argb = argb;
+            this.color = color;
+        }
+    }
+
+    static {
+        name("RED", Color.RED);
+        name("BLUE", Color.BLUE);
+        name("GREEN", Color.GREEN);
+        name("YELLOW", Color.YELLOW);
+    }
+
+    private static void name(String name, Color c)
+    {
+        NAMED.put(name, c);
+        NAMES.put(c.getRGB(), name);
+        colors.put(c.getRGB(), c);
+    }
+
+    // private constructor
+    private Palette() {}
+
+    /**
+     * The shared Color for a packed ARGB value.
+     * @param argb
+     * @return
+     */
+    public static Color color(int argb)
+    {
+        Color c = colors.get(argb);
+        if (c == null) {
+            c = colors.computeIfAbsent(argb, (Integer k) -> new Color(k, true));
+        }
+        return c;
+    }
+
+    /**
+     * The shared Color for the same ARGB value as the given one.
+     * @param c
+     * @return
+     */
+    public static Color intern(Color c)
+    {
+        return c == null ? null : color(c.getRGB());
+    }
+
+    /**
+     * The shared darker variant of a color, which selected shapes are
+     * drawn in. Same as Util.darker() on the ARGB value.
+     * @param c
+     * @return
+     */
+    public static Color darker(Color c)
+    {
+        int argb = c.getRGB();
+        int slot = (argb * 0x9E3779B9) >>> (32 - RECENT_BITS);
+        Darker r = recent[slot];
+        if (r != null && r.argb == argb) {
+            return r.color;
+        }
+        Color d = darker.get(argb);
+        if (d == null) {
+            d = darker.computeIfAbsent(argb, (Integer k) -> color(Util.darker(k)));
+        }
+        recent[slot] = new Darker(argb, d);
+        return d;
+    }
+
+    /**
+     * The text form of a color: its name if it has one, else hex.
+     * @param c
+     * @return
+     */
+    public static String toString(Color c)
+    {
+        return toString(c.getRGB());
+    }
+
+    public static String toString(int argb)
+    {
+        String name = NAMES.get(argb);
+        if (name != null) {
+            return name;
+        }
+        if ((argb >>> 24) == 0xff) {
+            return String.format("#%06X", argb & 0xffffff);
+        }
+        return String.format("#%08X", argb);
+    }
+
+    /**
+     * Parse a color written by toString().
+     * @param token
+     * @return
+     * @throws UnsupportedOperationException if it isn't a color
+     */
+    public static Color parse(String token)
+    {
+        Color c = NAMED.get(token);
+        if (c == null) {
+            c = tokens.get(token);
+        }
+        if (c == null) {
+            c = color(parseHex(token));
+            if (tokens.size() < MAX_TOKENS) {
+                tokens.put(token, c);
+            }
+        }
+        return c;
+    }
+
+    private static int parseHex(String token)
+    {
+        int digits = token.length() - 1;
+        if (token.charAt(0) == '#' && (digits == 6 || digits == 8)) {
+            try {
+                long v = Long.parseLong(token.substring(1), 16);
+                return digits == 6 ? (int) v | 0xff000000 : (int) v;
+            } catch (NumberFormatException e) {
+                // fall through
+            }
+        }
+        throw new UnsupportedOperationException("Unexpected color: " + token);
+    }
+
+    /**
+     * The colors used by a batch of shapes, numbered in the order they're
+     * first added, so each shape in the batch can store a small index
+     * instead of a whole color.
+     */
+    static final class Table
+    {
+        private final Map<Integer, Integer> index = new HashMap<>();
+        private int[] argb = new int[8];
+        private int size;
+
+        /// the index of the color, adding it if it's new
+        int add(int color)
+        {
+            Integer i = index.get(color);
+            if (i != null) {
+                return i;
+            }
+            if (size == argb.length) {
+                argb = Arrays.copyOf(argb, size * 2);
+            }
+            argb[size] = color;
+            index.put(color, size);
+            return size++;
+        }
+
+        /// the index of a color that was added
+        int indexOf(int color)
+        {
+            return index.get(color);
+        }
+
+        int get(int i)
+        {
+            return argb[i];
+        }
+
+        int size()
+        {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package drawshapes;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Point;
+
+/**
+ * A filled polygon: a Polyline whose last vertex joins back to the first.
+ *
+ * Hit testing uses the even-odd rule: a point is inside if a ray from it
+ * to the right crosses the edges an odd number of times. With an edge
+ * grid, only the edges in the cells along that ray are looked at.
+ */
+public class Polygon extends Polyline
+{
+    /**
+     * @param points the vertices, packed x0, y0, x1, y1, ... in scene coordinates
+     * @param color
+     */
+    public Polygon(int[] points, Color color)
+    {
+        super(points, color);
+    }
+
+    Polygon(Point anchor, int[] local, Color color)
+    {
+        super(anchor, local, color);
+    }
+
+    @Override
+    protected int edgeCount()
+    {
+        return n;
+    }
+
+    @Override
+    public void draw(Graphics g)
+    {
+        g.setColor(drawAwtColor());
+        if (g instanceof Graphics2D g2) {
+            Graphics2DRenderer.fillPolygon(g2, xy, 0, n, anchorPoint.x, anchorPoint.y);
+            return;
+        }
+        g.translate(anchorPoint.x, anchorPoint.y);
+        g.fillPolygon(xs(), ys(), n);
+        g.translate(-anchorPoint.x, -anchorPoint.y);
+    }
+
+    @Override
+    public void render(Renderer r)
+    {
+        r.setColor(drawColor());
+        r.fillPolygon(xy, 0, n, anchorPoint.x, anchorPoint.y);
+    }
+
+    @Override
+    public boolean contains(Point point)
+    {
+        if (!boundingBox.contains(point)) {
+            return false;
+        }
+        int px = point.x - anchorPoint.x;
+        int py = point.y - anchorPoint.y;
+        EdgeGrid grid = grid();
+        boolean inside = false;
+        if (grid == null) {
+            for (int e = 0; e < n; e++) {
+                double x = crossing(e, px, py);
+                if (x > px) {
+                    inside = !inside;
+                }
+            }
+            return inside;
+        }
+        // the ray can go either way, so take the side with fewer cells. An
+        // edge can be in several cells of the row, so each crossing only
+        // counts in the cell it falls in
+        int row = grid.row(py);
+        int start = grid.col(px);
+        boolean right = start >= grid.cols / 2;
+        for (int c = start; c < grid.cols && c >= 0; c += right ? 1 : -1) {
+            for (int i = grid.start(c, row), end = grid.end(c, row); i < end; i++) {
+                double x = crossing(grid.edge(i), px, py);
+                if ((right ? x > px : x <= px) && grid.col(x) == c) {
+                    inside = !inside;
+                }
+            }
+        }
+        return inside;
+    }
+
+    /// where edge e crosses the line y = py, or NaN if it doesn't
+    private double crossing(int e, int px, int py)
+    {
+        int a = e * 2;
+        int b = ((e + 1) % n) * 2;
+        int y1 = xy[a + 1];
+        int y2 = xy[b + 1];
+        if ((y1 > py) == (y2 > py)) {
+            return Double.NaN;
+        }
+        return xy[a] + (py - y1) * (double) (xy[b] - xy[a]) / (y2 - y1);
+    }
+
+    @Override
+    public IShape copy()
+    {
+        Polygon c = new Polygon(new Point(anchorPoint), xy, color);
+        shareWith(c);
+        return c;
+    }
+
+    /**
+     * "POLYGON n x0 y0 ... color selected", with the vertices in scene
+     * coordinates.
+     */
+    @Override
+    public String toString()
+    {
+        return toString("POLYGON");
+    }
+}
@@ -0,0 +1,301 @@
+package drawshapes;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Point;
+
+/**
+ * An open chain of line segments through any number of vertices.
+ *
+ * The vertices are packed into one int array (x0, y0, x1, y1, ...),
+ * relative to the anchor point, which is the center of their bounding
+ * box. Moving the shape only moves the anchor, and the array is never
+ * changed once built (scaling makes a new one), so copies share it.
+ *
+ * A point hits the line if it is within TOLERANCE pixels of a segment.
+ * With GRID_MIN or more vertices the segments are found through an
+ * EdgeGrid, built on the first hit test.
+ */
+public class Polyline extends AbstractShape
+{
+    /// fewer vertices than this and a hit test just checks every edge
+    static final int GRID_MIN = 64;
+    /// how far from a line a point can be and still hit it
+    static final int TOLERANCE = 3;
+
+    protected int[] xy;
+    protected final int n;
+    // bounds of xy, relative to the anchor
+    protected int left, top, right, bottom;
+    // xy split into x and y arrays for java.awt.Graphics; made on first draw
+    private int[] xs, ys;
+    private EdgeGrid grid;
+
+    /**
+     * @param points the vertices, packed x0, y0, x1, y1, ... in scene coordinates
+     * @param color
+     */
+    public Polyline(int[] points, Color color)
+    {
+        super(center(checked(points)));
+        this.xy = relative(points, anchorPoint);
+        this.n = xy.length / 2;
+        this.color = color;
+        updateBounds();
+    }
+
+    /**
+     * @param anchor
+     * @param local vertices relative to the anchor; owned by the shape from now on
+     * @param color
+     */
+    Polyline(Point anchor, int[] local, Color color)
+    {
+        super(anchor);
+        this.xy = checked(local);
+        this.n = xy.length / 2;
+        this.color = color;
+        updateBounds();
+    }
+
+    private static int[] checked(int[] points)
+    {
+        if (points.length < 4 || points.length % 2 != 0) {
+            throw new IllegalArgumentException("Need at least 2 vertices, as x y pairs: " + points.length + " numbers");
+        }
+        return points;
+    }
+
+    private static Point center(int[] points)
+    {
+        int minX = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE;
+        int minY = Integer.MAX_VALUE, maxY = Integer.MIN_VALUE;
+        for (int i = 0; i + 1 < points.length; i += 2) {
+            minX = Math.min(minX, points[i]);
+            maxX = Math.max(maxX, points[i]);
+            minY = Math.min(minY, points[i + 1]);
+            maxY = Math.max(maxY, points[i + 1]);
+        }
+        return new Point(minX + (maxX - minX) / 2, minY + (maxY - minY) / 2);
+    }
+
+    private static int[] relative(int[] points, Point anchor)
+    {
+        int[] local = new int[points.length];
+        for (int i = 0; i + 1 < points.length; i += 2) {
+            local[i] = points[i] - anchor.x;
+            local[i + 1] = points[i + 1] - anchor.y;
+        }
+        return local;
+    }
+
+    /// recompute the bounds after xy changed
+    private void updateBounds()
+    {
+        left = top = Integer.MAX_VALUE;
+        right = bottom = Integer.MIN_VALUE;
+        for (int i = 0; i < xy.length; i += 2) {
+            left = Math.min(left, xy[i]);
+            right = Math.max(right, xy[i]);
+            top = Math.min(top, xy[i + 1]);
+            bottom = Math.max(bottom, xy[i + 1]);
+        }
+        if (boundingBox == null) {
+            setBoundingBox(anchorPoint.x + left, anchorPoint.x + right, anchorPoint.y + top, anchorPoint.y + bottom);
+        } else {
+            boundingBox.set(anchorPoint.x + left, anchorPoint.x + right, anchorPoint.y + top, anchorPoint.y + bottom);
+        }
+        xs = ys = null;
+        grid = null;
+    }
+
+    public int getVertexCount()
+    {
+        return n;
+    }
+
+    /// vertex i in scene coordinates
+    public int getX(int i)
+    {
+        return anchorPoint.x + xy[i * 2];
+    }
+
+    public int getY(int i)
+    {
+        return anchorPoint.y + xy[i * 2 + 1];
+    }
+
+    /// the vertices relative to the anchor; must not be changed
+    int[] localVertices()
+    {
+        return xy;
+    }
+
+    /// edge i joins vertex i and vertex (i + 1) % n
+    protected int edgeCount()
+    {
+        return n - 1;
+    }
+
+    protected void split()
+    {
+        if (xs == null) {
+            int[] x = new int[n];
+            int[] y = new int[n];
+            for (int i = 0; i < n; i++) {
+                x[i] = xy[i * 2];
+                y[i] = xy[i * 2 + 1];
+            }
+            ys = y;
+            xs = x;
+        }
+    }
+
+    protected int[] xs()
+    {
+        split();
+        return xs;
+    }
+
+    protected int[] ys()
+    {
+        split();
+        return ys;
+    }
+
+    /// the edge grid, padded for the hit tolerance; null below GRID_MIN vertices
+    protected EdgeGrid grid()
+    {
+        if (grid == null && n >= GRID_MIN) {
+            grid = new EdgeGrid(xy, n, edgeCount(), left, top, right, bottom, TOLERANCE);
+        }
+        return grid;
+    }
+
+    @Override
+    public void draw(Graphics g)
+    {
+        g.setColor(drawAwtColor());
+        g.translate(anchorPoint.x, anchorPoint.y);
+        g.drawPolyline(xs(), ys(), n);
+        g.translate(-anchorPoint.x, -anchorPoint.y);
+    }
+
+    @Override
+    public void render(Renderer r)
+    {
+        r.setColor(drawColor());
+        r.drawPolyline(xy, 0, n, anchorPoint.x, anchorPoint.y);
+    }
+
+    @Override
+    public boolean contains(Point point)
+    {
+        BoundingBox b = boundingBox;
+        if (point.x < b.getLeft() - TOLERANCE || point.x > b.getRight() + TOLERANCE
+                || point.y < b.getTop() - TOLERANCE || point.y > b.getBottom() + TOLERANCE) {
+            return false;
+        }
+        int px = point.x - anchorPoint.x;
+        int py = point.y - anchorPoint.y;
+        EdgeGrid grid = grid();
+        if (grid == null) {
+            for (int e = 0; e < edgeCount(); e++) {
+                if (nearEdge(e, px, py)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        int c = grid.col(px);
+        int r = grid.row(py);
+        for (int i = grid.start(c, r), end = grid.end(c, r); i < end; i++) {
+            if (nearEdge(grid.edge(i), px, py)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /// is (px, py) within TOLERANCE of edge e?
+    private boolean nearEdge(int e, int px, int py)
+    {
+        int a = e * 2;
+        int b = ((e + 1) % n) * 2;
+        double x1 = xy[a], y1 = xy[a + 1];
+        double dx = xy[b] - x1, dy = xy[b + 1] - y1;
+        double len = dx * dx + dy * dy;
+        double t = len == 0 ? 0 : Math.max(0, Math.min(1, ((px - x1) * dx + (py - y1) * dy) / len));
+        double ex = x1 + t * dx - px;
+        double ey = y1 + t * dy - py;
+        return ex * ex + ey * ey <= TOLERANCE * TOLERANCE + 1e-9;
+    }
+
+    @Override
+    public void setAnchorPoint(Point p)
+    {
+        move(p.x - anchorPoint.x, p.y - anchorPoint.y);
+    }
+
+    @Override
+    public void scaleUp(double scale)
+    {
+        resize(scale);
+    }
+
+    @Override
+    public void scaleDown(double scale)
+    {
+        resize(scale);
+    }
+
+    /// scale about the anchor; into a new array, since copies share the old one
+    private void resize(double scale)
+    {
+        int[] scaled = new int[xy.length];
+        for (int i = 0; i < xy.length; i++) {
+            scaled[i] = (int) Math.round(xy[i] * scale);
+        }
+        xy = scaled;
+        updateBounds();
+        version++;
+    }
+
+    /// copies share the vertices and everything derived from them
+    protected void shareWith(Polyline copy)
+    {
+        copy.xs = xs;
+        copy.ys = ys;
+        copy.grid = grid;
+    }
+
+    @Override
+    public IShape copy()
+    {
+        Polyline c = new Polyline(new Point(anchorPoint), xy, color);
+        shareWith(c);
+        return c;
+    }
+
+    /// the type word and vertices in scene coordinates, as in the file format
+    protected String toString(String type)
+    {
+        StringBuilder s = new StringBuilder(type.length() + n * 12 + 24);
+        s.append(type).append(' ').append(n);
+        for (int i = 0; i < n; i++) {
+            s.append(' ').append(getX(i)).append(' ').append(getY(i));
+        }
+        s.append(' ').append(colorToString(getColor())).append(' ').append(selected);
+        return s.toString();
+    }
+
+    /**
+     * "POLYLINE n x0 y0 ... color selected", with the vertices in scene
+     * coordinates.
+     */
+    @Override
+    public String toString()
+    {
+        return toString("POLYLINE");
+    }
+}
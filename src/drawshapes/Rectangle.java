@@ -26,18 +26,28 @@ public class Rectangle extends AbstractShape
         this.height = bottom - top;
     }
 
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
     /* (non-Javadoc)
      * @see drawshapes.sol.Shape#draw(java.awt.Graphics)
      */
     @Override
     public void draw(Graphics g) {
-        if (isSelected()){
-            g.setColor(color.darker());
-        } else {
-            g.setColor(getColor());
-        }
+        g.setColor(drawAwtColor());
        // g.fillRect(getAnchorPoint().x, getAnchorPoint().y, width, height);
-        g.fillRect(getAnchorPoint().x - width/2, getAnchorPoint().y - height/2, width,height);
+        g.fillRect(anchorPoint.x - width/2, anchorPoint.y - height/2, width,height);
+    }
+
+    @Override
+    public void render(Renderer r) {
+        r.setColor(drawColor());
+        r.fillRect(anchorPoint.x - width/2, anchorPoint.y - height/2, width, height);
     }
 
     @Override
@@ -59,20 +69,28 @@ public class Rectangle extends AbstractShape
     public void setAnchorPoint(Point p) {
         // TODO: move bounding box
         this.anchorPoint = p;
+        version++;
     }
 
     @Override
     public void scaleUp(double scale)
     {
-        width *= scale;
-        height *= scale;
+        resize(scale);
     }
 
     @Override
     public void scaleDown(double scale)
+    {
+        resize(scale);
+    }
+
+    /// scale about the anchor, keeping the bounding box in step
+    private void resize(double scale)
     {
         width *= scale;
         height *= scale;
+        boundingBox.set(anchorPoint.x - width/2, anchorPoint.x + width/2, anchorPoint.y - height/2, anchorPoint.y + height/2);
+        version++;
     }
 
     @Override
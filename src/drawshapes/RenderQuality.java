@@ -0,0 +1,159 @@
+package drawshapes;
+
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+
+/**
+ * Adaptive rendering quality controller.
+ *
+ * While the user is dragging, nudging or scaling shapes we would rather
+ * keep up with the mouse than draw pretty edges. The controller keeps a
+ * running average of how long a frame takes and compares it to a frame
+ * budget. During an interaction it steps the quality down one level when
+ * frames are over budget and back up when there is plenty of headroom.
+ * Once nothing has happened for a short idle period it goes back to
+ * FULL, and the view should repaint once more so the final frame is
+ * drawn at full quality.
+ *
+ * Frames are reported by the view (DrawShapesPanel or ActiveRenderCanvas),
+ * interactions by DrawShapes.
+ */
+public class RenderQuality
+{
+    public enum Level {
+        /** antialiasing, quality strokes and alpha compositing */
+        FULL,
+        /** all speed hints, but everything is still drawn */
+        REDUCED,
+        /** speed hints, and shapes too small to see are skipped */
+        LOD
+    }
+
+    private static final long DEFAULT_BUDGET_NANOS = 16_666_667L; // 60 fps
+    private static final long IDLE_NANOS = 250_000_000L;
+    /// shapes whose bounding box is smaller than this (in pixels) are skipped at LOD
+    static final int LOD_MIN_SIZE = 3;
+
+    private static final Level[] LEVELS = Level.values();
+
+    private final long frameBudgetNanos;
+    private volatile long lastInteraction;
+    private volatile Level level = Level.FULL;
+    private volatile Level lastRendered = Level.FULL;
+    private double averageFrameNanos;
+
+    public RenderQuality()
+    {
+        this(DEFAULT_BUDGET_NANOS);
+    }
+
+    /**
+     * @param frameBudgetNanos how long a frame may take during an interaction
+     */
+    public RenderQuality(long frameBudgetNanos)
+    {
+        this.frameBudgetNanos = frameBudgetNanos;
+        // idle from the start; nanoTime() can be anything, so not MIN_VALUE
+        this.lastInteraction = System.nanoTime() - IDLE_NANOS;
+    }
+
+    /**
+     * Record that a drag, nudge or scale is in progress.
+     */
+    public void interacting()
+    {
+        lastInteraction = System.nanoTime();
+    }
+
+    public boolean isInteracting()
+    {
+        return System.nanoTime() - lastInteraction < IDLE_NANOS;
+    }
+
+    /**
+     * Pick the level for the next frame and set the matching rendering
+     * hints on the given Graphics object.
+     *
+     * @param g
+     * @return the level the frame should be drawn at
+     */
+    public Level beginFrame(Graphics g)
+    {
+        Level next = isInteracting() ? level : Level.FULL;
+        level = next;
+        apply(g, next);
+        lastRendered = next;
+        return next;
+    }
+
+    /**
+     * Report how long the frame started by beginFrame() took.
+     *
+     * @param nanos
+     */
+    public void endFrame(long nanos)
+    {
+        // exponential moving average so one slow frame doesn't flip the level
+        averageFrameNanos = averageFrameNanos == 0 ? nanos : averageFrameNanos * 0.8 + nanos * 0.2;
+        if (!isInteracting()) {
+            return;
+        }
+        Level current = level;
+        if (averageFrameNanos > frameBudgetNanos && current != Level.LOD) {
+            level = LEVELS[current.ordinal() + 1];
+        } else if (averageFrameNanos < frameBudgetNanos / 2 && current != Level.FULL) {
+            level = LEVELS[current.ordinal() - 1];
+        }
+    }
+
+    /**
+     * Has the interaction finished since the last frame was drawn at a
+     * lower quality? If so the view should repaint at full quality.
+     *
+     * @return
+     */
+    public boolean needsFullQualityRepaint()
+    {
+        return lastRendered != Level.FULL && !isInteracting();
+    }
+
+    /**
+     * How long until needsFullQualityRepaint() turns true, if nothing
+     * else happens: 0 if it already is, and -1 if the last frame was
+     * drawn at full quality, so there's nothing to wait for.
+     *
+     * @return
+     */
+    public long nanosUntilFullQualityRepaint()
+    {
+        if (lastRendered == Level.FULL) {
+            return -1;
+        }
+        return Math.max(0, lastInteraction + IDLE_NANOS - System.nanoTime());
+    }
+
+    public double getAverageFrameMillis()
+    {
+        return averageFrameNanos / 1_000_000.0;
+    }
+
+    static void apply(Graphics g, Level level)
+    {
+        if (!(g instanceof Graphics2D)) {
+            return;
+        }
+        Graphics2D g2 = (Graphics2D)g;
+        if (level == Level.FULL) {
+            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g2.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g2.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+            g2.setRenderingHint(RenderingHints.KEY_ALPHA_INTERPOLATION, RenderingHints.VALUE_ALPHA_INTERPOLATION_QUALITY);
+        } else {
+            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+            g2.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED);
+            g2.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_NORMALIZE);
+            g2.setRenderingHint(RenderingHints.KEY_ALPHA_INTERPOLATION, RenderingHints.VALUE_ALPHA_INTERPOLATION_SPEED);
+        }
+    }
+}
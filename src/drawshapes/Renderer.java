@@ -0,0 +1,71 @@
+package drawshapes;
+
+/**
+ * Backend-neutral drawing interface.
+ * 
+ * Shapes describe themselves with a handful of primitive commands
+ * instead of talking to a java.awt.Graphics directly, so the same
+ * scene can be drawn to the screen, counted for a benchmark, or
+ * written out as SVG. Colors are packed ARGB ints (see Color.getRGB()).
+ * 
+ * DisplayList records these commands so they can be replayed later.
+ */
+public interface Renderer
+{
+    /**
+     * Set the color used by the following fill/draw commands.
+     * @param argb packed alpha/red/green/blue
+     */
+    public void setColor(int argb);
+    /**
+     * Fill the rectangle with the given top-left corner and size.
+     */
+    public void fillRect(int x, int y, int width, int height);
+    /**
+     * Fill the oval inscribed in the given rectangle.
+     */
+    public void fillOval(int x, int y, int width, int height);
+    /**
+     * Outline the rectangle with the given top-left corner and size.
+     */
+    public void drawRect(int x, int y, int width, int height);
+    /**
+     * Fill the polygon whose n vertices are packed as x, y pairs from
+     * xy[offset], each moved by (dx, dy).
+     */
+    public void fillPolygon(int[] xy, int offset, int n, int dx, int dy);
+    /**
+     * Draw lines joining the n vertices packed as x, y pairs from
+     * xy[offset], each moved by (dx, dy). The last isn't joined to the first.
+     */
+    public void drawPolyline(int[] xy, int offset, int n, int dx, int dy);
+    /**
+     * Draw image number id of the shared ImageCache stretched over the
+     * given rectangle, or outline the rectangle if it isn't decoded yet.
+     */
+    public void drawImage(int id, int x, int y, int width, int height);
+    /**
+     * Draw shaped text with its baseline starting at (x, y).
+     */
+    public void drawGlyphs(GlyphRun run, int x, int y);
+    /**
+     * The commands up to the matching endGroup() all draw inside the
+     * given rectangle. A renderer that can tell nothing there will show
+     * returns false, and the caller then skips them and the endGroup().
+     */
+    public default boolean beginGroup(int x, int y, int width, int height)
+    {
+        return true;
+    }
+    public default void endGroup()
+    {
+    }
+    /**
+     * A renderer that moves everything by (dx, dy) and passes it on to
+     * this one. Only valid until the group it was asked for inside ends.
+     */
+    public default Renderer translated(int dx, int dy)
+    {
+        return new Group.Translated(this, dx, dy);
+    }
+}
@@ -6,14 +6,22 @@ import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Point;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Scanner;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
 import jdk.jshell.ImportSnippet;
 
 /**
@@ -26,42 +34,72 @@ import jdk.jshell.ImportSnippet;
  * rather than individual shapes, and to apply operations
  * to collections of shapes.
  * 
+ * Scene can be shared between threads. The shapes are kept in an
+ * immutable ShapeVector; every edit builds a new vector (sharing most
+ * of the old one) and publishes it with a new version number. Readers
+ * just grab the current vector, which is O(1) and never blocks, and see
+ * a consistent list no matter what writers do afterwards. Writers are
+ * serialized with the scene's monitor.
+ * 
+ * Edits made through Scene (move, recolor, scale) replace the affected
+ * shapes with edited copies rather than changing them in place, so a
+ * shape that is in a published vector keeps its geometry and color.
+ * The selected flag is the one exception: it is UI state and is still
+ * flipped in place, because drag-select does that on every mouse event.
+ * 
  * @author jspacco
  *
  */
 public class Scene implements Iterable<IShape>
 {
-    private List<IShape> shapeList=new LinkedList<IShape>();
+    private volatile ShapeVector shapes = ShapeVector.EMPTY;
+    private volatile SpatialIndex index;
+    private volatile AttributeIndex attributes;
+    private long version;
+    private EditJournal journal;
+    // a scale gesture whose latest update isn't journaled yet, see ScaleGesture
+    private ScaleGesture gesture;
     
     private SelectionRectangle selectRect;
     private boolean isDrag;
     private Point startDrag;
+    private DisplayList displayList = new DisplayList();
+    private Graphics2DRenderer screenRenderer = new Graphics2DRenderer(null);
+    private static final Color HOVER_COLOR = Color.ORANGE;
+    /// selections at least this big are transformed in parallel, in chunks of this size
+    private static final int PARALLEL_CHUNK = 4096;
+    private IShape hover;
+    // last answer of topmostAt, see there
+    private IShape topmost;
+    private long topmostVersion = -1;
+    private boolean topmostIsClear;
     
     public void updateSelectRect(Point drag) {
-        for (IShape s : this){
-            s.setSelected(false);
-        }
+        updateSelectRect(drag.x, drag.y);
+    }
 
-        if (drag.x > startDrag.x){
-            if (drag.y > startDrag.y){
-                // top-left to bottom-right
-                selectRect = new SelectionRectangle(startDrag.x, drag.x, startDrag.y, drag.y);
-            } else {
-                // bottom-left to top-right
-                selectRect = new SelectionRectangle(startDrag.x, drag.x, drag.y, startDrag.y);
-            }
+    /**
+     * Resize the drag rectangle so it runs from where the drag started to
+     * (x, y), and select exactly the shapes it touches. This runs for every
+     * mouse drag event, so it reuses one SelectionRectangle and doesn't
+     * allocate anything.
+     * @param x
+     * @param y
+     */
+    public void updateSelectRect(int x, int y) {
+        int left = Math.min(x, startDrag.x);
+        int right = Math.max(x, startDrag.x);
+        int top = Math.min(y, startDrag.y);
+        int bottom = Math.max(y, startDrag.y);
+        if (selectRect == null) {
+            selectRect = new SelectionRectangle(left, right, top, bottom);
         } else {
-            if (drag.y > startDrag.y){
-                // top-right to bottom-left
-                selectRect = new SelectionRectangle(drag.x, startDrag.x, startDrag.y, drag.y);
-            } else {
-                // bottom-left to top-right
-                selectRect = new SelectionRectangle(drag.x, startDrag.x, drag.y, startDrag.y);
-            }
+            selectRect.setBounds(left, right, top, bottom);
         }
-        List<IShape> selectedShapes = this.select(selectRect);
-        for (IShape s : selectedShapes){
-            s.setSelected(true);
+        ShapeVector current = shapes;
+        for (int i = 0; i < current.size(); i++) {
+            IShape s = current.get(i);
+            s.setSelected(s.intersects(selectRect));
         }
     }
     
@@ -79,15 +117,71 @@ public class Scene implements Iterable<IShape>
      * @param g
      */
     public void draw(Graphics g) {
-        for (IShape s : shapeList) {
-            if (s!=null){
-                s.draw(g);
+        draw(g, RenderQuality.Level.FULL);
+    }
+
+    /**
+     * Draw all the shapes in the scene at the given quality level.
+     * At LOD, shapes too small to see are skipped and the drag
+     * rectangle is drawn as an outline instead of a translucent fill.
+     * @param g
+     * @param level
+     */
+    public void draw(Graphics g, RenderQuality.Level level) {
+        draw(g, level, displayList, screenRenderer);
+    }
+
+    /**
+     * Draw the scene through the given display list and renderer rather
+     * than the scene's own. Used by views that draw off the EDT and so
+     * must not share the scene's display list.
+     */
+    void draw(Graphics g, RenderQuality.Level level, DisplayList list, Graphics2DRenderer renderer) {
+        ShapeVector current = shapes;
+        boolean lod = level == RenderQuality.Level.LOD;
+        if (lod) {
+            for (int i = 0; i < current.size(); i++) {
+                IShape s = current.get(i);
+                if (s!=null && !isTiny(s)){
+                    s.draw(g);
+                }
             }
+        } else {
+            renderer.setGraphics(g);
+            list.compile(current);
+            list.replay(renderer);
+        }
+        if (hover != null && !isDrag && topmostVersion == current.version()) {
+            BoundingBox box = hover.getBoundingBox();
+            g.setColor(HOVER_COLOR);
+            g.drawRect(box.getLeft(), box.getTop(), box.getWidth(), box.getHeight());
         }
         if (isDrag) {
-            selectRect.draw(g);
+            if (lod) {
+                BoundingBox box = selectRect.getBoundingBox();
+                g.setColor(Color.GRAY);
+                g.drawRect(box.getLeft(), box.getTop(), box.getWidth(), box.getHeight());
+            } else {
+                selectRect.draw(g);
+            }
         }
     }
+
+    /**
+     * Send all the shapes in the scene (but not the drag rectangle) to the
+     * given Renderer. This goes through the scene's DisplayList, so only
+     * shapes that changed since the last call are looked at again.
+     * @param r
+     */
+    public void render(Renderer r) {
+        displayList.compile(shapes);
+        displayList.replay(r);
+    }
+
+    private static boolean isTiny(IShape s) {
+        BoundingBox box = s.getBoundingBox();
+        return box.getWidth() < RenderQuality.LOD_MIN_SIZE && box.getHeight() < RenderQuality.LOD_MIN_SIZE;
+    }
     
     /**
      * Get an iterator that can iterate through all the shapes
@@ -95,9 +189,61 @@ public class Scene implements Iterable<IShape>
      */
     @Override
     public Iterator<IShape> iterator() {
-        return shapeList.iterator();
+        return shapes.iterator();
+    }
+
+    /**
+     * Return the current shapes as an immutable list. This is O(1) and
+     * never blocks; later edits to the scene don't affect the returned list.
+     * @return
+     */
+    public ShapeVector getShapes() {
+        return shapes;
+    }
+
+    /**
+     * Return the version of the scene, which goes up every time an
+     * edit is published. Selection changes don't count as edits.
+     * @return
+     */
+    public long getVersion() {
+        return shapes.version();
     }
     
+    /**
+     * Return the spatial index for the given version of the shapes,
+     * building it (in one bulk-load pass) if the scene has changed since
+     * it was last built. This is the only place it's built: edits never
+     * build it themselves, so a burst of edits with no query in between
+     * (a drag, a wheel gesture, a paste of many shapes) costs no index
+     * builds, and the first query after them costs one.
+     * @param current
+     * @return
+     */
+    SpatialIndex index(ShapeVector current) {
+        SpatialIndex idx = index;
+        if (idx == null || idx.version() != current.version() || idx.size() != current.size()) {
+            idx = SpatialIndex.build(current);
+            index = idx;
+        }
+        return idx;
+    }
+
+    /**
+     * Return the type and color index for the given version of the
+     * shapes, building it if the scene has changed since it was last built.
+     * @param current
+     * @return
+     */
+    AttributeIndex attributes(ShapeVector current) {
+        AttributeIndex idx = attributes;
+        if (idx == null || idx.version() != current.version() || idx.size() != current.size()) {
+            idx = AttributeIndex.build(current);
+            attributes = idx;
+        }
+        return idx;
+    }
+
     /**
      * Return a list of shapes that contain the given point.
      * @param point The point
@@ -105,13 +251,12 @@ public class Scene implements Iterable<IShape>
      */
     public List<IShape> select(Point point)
     {
-        List<IShape> selected = new LinkedList<IShape>();
-        for (var s : shapeList){
-            if (s.contains(point)){
-                selected.add(s);
-            }
-        }
-        return selected;
+        ShapeVector current = shapes;
+        IntList hits = new IntList();
+        index(current).search(point.x, point.y, (i) -> {
+            if (current.get(i).contains(point)) hits.add(i);
+        });
+        return inSceneOrder(current, hits);
     }
     
     /**
@@ -121,13 +266,140 @@ public class Scene implements Iterable<IShape>
      */
     public List<IShape> select(IShape shape)
     {
-        List<IShape> selected = new LinkedList<IShape>();
-        for (IShape s : shapeList){
-            if (s.intersects(shape)){
-                selected.add(s);
+        ShapeVector current = shapes;
+        BoundingBox box = shape.getBoundingBox();
+        IntList hits = new IntList();
+        index(current).search(box.getLeft(), box.getTop(), box.getRight(), box.getBottom(), (i) -> {
+            if (current.get(i).intersects(shape)) hits.add(i);
+        });
+        return inSceneOrder(current, hits);
+    }
+
+    /**
+     * Return the k shapes nearest to the point, nearest first, measured
+     * to their bounding boxes.
+     * @param point
+     * @param k
+     * @return
+     */
+    public List<IShape> nearest(Point point, int k)
+    {
+        ShapeVector current = shapes;
+        IntList hits = new IntList(k);
+        index(current).nearest(point.x, point.y, k, hits);
+        List<IShape> result = new ArrayList<>(hits.size());
+        for (int i = 0; i < hits.size(); i++) {
+            result.add(current.get(hits.get(i)));
+        }
+        return result;
+    }
+
+    /**
+     * Return the topmost (last drawn) shape containing the point, or null.
+     * This runs on every mouse move, so the last answer is kept: while
+     * the point stays inside that shape, and no shape above it overlaps
+     * it, the answer can't change and no search is needed.
+     * @param x
+     * @param y
+     * @return
+     */
+    public IShape topmostAt(int x, int y)
+    {
+        ShapeVector current = shapes;
+        Point point = new Point(x, y);
+        // the box is only a quick reject: a circle or polygon doesn't fill its corners
+        if (topmost != null && topmostVersion == current.version() && topmostIsClear
+                && inBox(topmost.getBoundingBox(), x, y) && topmost.contains(point)) {
+            return topmost;
+        }
+        SpatialIndex idx = index(current);
+        int[] best = {-1};
+        idx.search(x, y, (i) -> {
+            if (i > best[0] && current.get(i).contains(point)) best[0] = i;
+        });
+        topmostVersion = current.version();
+        if (best[0] < 0) {
+            topmost = null;
+            return null;
+        }
+        topmost = current.get(best[0]);
+        // if nothing later in the scene overlaps its box, it stays on top anywhere in it
+        BoundingBox box = topmost.getBoundingBox();
+        boolean[] clear = {true};
+        idx.search(box.getLeft(), box.getTop(), box.getRight(), box.getBottom(), (i) -> {
+            if (i > best[0]) clear[0] = false;
+        });
+        topmostIsClear = clear[0];
+        return topmost;
+    }
+
+    private static boolean inBox(BoundingBox box, int x, int y) {
+        return x >= box.getLeft() && x <= box.getRight() && y >= box.getTop() && y <= box.getBottom();
+    }
+
+    /**
+     * Highlight the topmost shape under the point.
+     * @param x
+     * @param y
+     * @return true if the highlighted shape changed, so the view needs a repaint
+     */
+    public boolean updateHover(int x, int y)
+    {
+        IShape s = topmostAt(x, y);
+        if (s == hover) {
+            return false;
+        }
+        hover = s;
+        return true;
+    }
+
+    /**
+     * Snap a point to the nearest shape: to its center, or to the nearest
+     * point on the edge of its bounding box, whichever is closer, if that
+     * is within the given distance.
+     * @param p
+     * @param distance
+     * @return the snapped point, or p itself if nothing is close enough
+     */
+    public Point snap(Point p, int distance)
+    {
+        Point best = p;
+        long bestDist = (long) distance * distance;
+        for (IShape s : nearest(p, 4)) {
+            BoundingBox box = s.getBoundingBox();
+            Point center = s.getAnchorPoint();
+            // nearest point on the box outline
+            int ex = Math.max(box.getLeft(), Math.min(p.x, box.getRight()));
+            int ey = Math.max(box.getTop(), Math.min(p.y, box.getBottom()));
+            if (ex > box.getLeft() && ex < box.getRight() && ey > box.getTop() && ey < box.getBottom()) {
+                // inside: push out to the closest side
+                int toLeft = ex - box.getLeft(), toRight = box.getRight() - ex;
+                int toTop = ey - box.getTop(), toBottom = box.getBottom() - ey;
+                int m = Math.min(Math.min(toLeft, toRight), Math.min(toTop, toBottom));
+                if (m == toLeft) ex = box.getLeft();
+                else if (m == toRight) ex = box.getRight();
+                else if (m == toTop) ey = box.getTop();
+                else ey = box.getBottom();
+            }
+            for (Point candidate : new Point[] {new Point(center), new Point(ex, ey)}) {
+                long dx = candidate.x - p.x;
+                long dy = candidate.y - p.y;
+                if (dx * dx + dy * dy <= bestDist) {
+                    bestDist = dx * dx + dy * dy;
+                    best = candidate;
+                }
             }
         }
-        return selected;
+        return best;
+    }
+
+    private static List<IShape> inSceneOrder(ShapeVector current, IntList positions) {
+        positions.sort();
+        List<IShape> result = new LinkedList<IShape>();
+        for (int i = 0; i < positions.size(); i++) {
+            result.add(current.get(positions.get(i)));
+        }
+        return result;
     }
     
     /**
@@ -135,125 +407,797 @@ public class Scene implements Iterable<IShape>
      * the draw() method is invoked.
      * @param s
      */
-    public void addShape(IShape s) {
-        shapeList.add(s);
+    public synchronized void addShape(IShape s) {
+        prefetch(s);
+        publish(shapes.builder().add(s));
+        if (journal != null) journal.added(version, s);
+    }
+
+    /**
+     * Add many shapes as a single edit. Storage is sized once for all of
+     * them, they are journaled as one record, and the spatial index is
+     * bulk loaded for the result (when next queried, see index())
+     * instead of being updated per shape.
+     * @param added
+     */
+    public synchronized void addShapes(Collection<? extends IShape> added) {
+        if (added.isEmpty()) {
+            return;
+        }
+        ShapeVector.Builder b = shapes.builder();
+        b.ensureCapacity(b.size() + added.size());
+        for (IShape s : added) {
+            prefetch(s);
+            b.add(s);
+        }
+        publish(b);
+        if (journal != null) journal.addedAll(version, new ArrayList<IShape>(added));
+    }
+
+    /**
+     * Replicate the selection into a rows x cols grid. The selection
+     * itself is the top left cell; each other cell gets a copy of every
+     * selected shape, offset by the size of the selection plus the gap.
+     * All the copies are added as one edit.
+     * @param rows
+     * @param cols
+     * @param gap
+     * @return the number of shapes added
+     */
+    public synchronized int replicateSelected(int rows, int cols, int gap) {
+        List<IShape> selected = new ArrayList<>();
+        int left = Integer.MAX_VALUE, right = Integer.MIN_VALUE;
+        int top = Integer.MAX_VALUE, bottom = Integer.MIN_VALUE;
+        for (IShape s : shapes) {
+            if (s.isSelected()) {
+                selected.add(s);
+                BoundingBox box = s.getBoundingBox();
+                left = Math.min(left, box.getLeft());
+                right = Math.max(right, box.getRight());
+                top = Math.min(top, box.getTop());
+                bottom = Math.max(bottom, box.getBottom());
+            }
+        }
+        if (selected.isEmpty() || rows < 1 || cols < 1) {
+            return 0;
+        }
+        int dx = right - left + gap;
+        int dy = bottom - top + gap;
+        List<IShape> copies = new ArrayList<>(selected.size() * (rows * cols - 1));
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                if (r == 0 && c == 0) {
+                    continue;
+                }
+                for (IShape s : selected) {
+                    IShape copy = s.copy();
+                    copy.move(c * dx, r * dy);
+                    copies.add(copy);
+                }
+            }
+        }
+        addShapes(copies);
+        return copies.size();
     }
     
+    /**
+     * Put the selected shapes into one new (selected) group, as one edit.
+     * The group takes the place of the topmost selected shape, so it is
+     * drawn where the top of the selection was.
+     * @return false if fewer than two shapes were selected
+     */
+    public synchronized boolean groupSelected() {
+        ShapeVector current = shapes;
+        List<IShape> members = new ArrayList<>();
+        IntList selected = new IntList();
+        int last = -1;
+        for (int i = 0; i < current.size(); i++) {
+            if (current.get(i).isSelected()) {
+                members.add(copyOf(current.get(i)));
+                selected.add(i);
+                last = i;
+            }
+        }
+        if (members.size() < 2) {
+            return false;
+        }
+        Group group = new Group(members);
+        group.setSelected(true);
+        ShapeVector.Builder b = ShapeVector.EMPTY.builder();
+        b.ensureCapacity(current.size() - members.size() + 1);
+        for (int i = 0; i < current.size(); i++) {
+            IShape s = current.get(i);
+            if (i == last) {
+                b.add(group);
+            } else if (!s.isSelected()) {
+                b.add(s);
+            }
+        }
+        publish(b);
+        if (journal != null) journal.grouped(version, selected.toArray(), group);
+        return true;
+    }
+
+    /**
+     * Break every selected group back into its (selected) members, in
+     * the group's place, as one edit.
+     * @return false if no group was selected
+     */
+    public synchronized boolean ungroupSelected() {
+        ShapeVector current = shapes;
+        ShapeVector.Builder b = ShapeVector.EMPTY.builder();
+        b.ensureCapacity(current.size());
+        IntList groups = new IntList();
+        for (int i = 0; i < current.size(); i++) {
+            IShape s = current.get(i);
+            if (s.isSelected() && s instanceof Group g) {
+                for (IShape member : g.ungroup()) {
+                    b.add(member);
+                }
+                groups.add(i);
+            } else {
+                b.add(s);
+            }
+        }
+        if (groups.size() == 0) {
+            return false;
+        }
+        publish(b);
+        if (journal != null) journal.ungrouped(version, groups.toArray());
+        return true;
+    }
+
     /**
      * Remove a list of shapes from the given scene.
      * @param shapesToRemove
      */
-    public void removeShapes(Collection<IShape> shapesToRemove) {
-        shapeList.removeAll(shapesToRemove);
+    public synchronized void removeShapes(Collection<IShape> shapesToRemove) {
+        Set<IShape> remove = Collections.newSetFromMap(new IdentityHashMap<>());
+        remove.addAll(shapesToRemove);
+        removeWhere(remove::contains);
+    }
+
+    /// remove the matching shapes as one new version
+    private synchronized void removeWhere(Predicate<IShape> remove) {
+        ShapeVector current = shapes;
+        int[] indices = new int[current.size()];
+        int n = 0;
+        for (int i = 0; i < current.size(); i++) {
+            if (remove.test(current.get(i))) {
+                indices[n++] = i;
+            }
+        }
+        if (n == 0) {
+            return;
+        }
+        endGesture();
+        shapes = current.without(remove, ++version);
+        if (journal != null) journal.removed(version, Arrays.copyOf(indices, n));
+    }
+
+    /**
+     * Replace all the shapes in one edit, but only if nothing else has
+     * been published since the given version (compare-and-set). Used to
+     * apply work that was prepared off the EDT against a snapshot.
+     * @param expectedVersion
+     * @param replacement
+     * @return false if the scene had moved on and nothing was changed
+     */
+    public synchronized boolean replaceIf(long expectedVersion, List<IShape> replacement) {
+        if (shapes.version() != expectedVersion) {
+            return false;
+        }
+        ShapeVector.Builder b = ShapeVector.EMPTY.builder();
+        b.ensureCapacity(replacement.size());
+        for (IShape s : replacement) {
+            prefetch(s);
+            b.add(s);
+        }
+        publish(b);
+        if (journal != null) journal.replaced(version);
+        return true;
+    }
+
+    /**
+     * Journal every edit published from now on to the given journal
+     * (or stop journaling, if null). See EditJournal.open().
+     * @param journal
+     */
+    synchronized void setJournal(EditJournal journal) {
+        endGesture();
+        this.journal = journal;
+    }
+
+    /**
+     * Replace the shapes with ones recovered from a journal, published
+     * as a version newer than both the current one and the recovered
+     * one, so nothing holding the old shapes mistakes them for these.
+     * Not journaled itself.
+     * @param recovered
+     */
+    synchronized void restore(ShapeVector recovered) {
+        for (IShape s : recovered) {
+            prefetch(s);
+        }
+        endGesture();
+        version = Math.max(version, recovered.version()) + 1;
+        shapes = recovered.withVersion(version);
+    }
+
+    /// publish the builder's shapes as the next version of the scene
+    private void publish(ShapeVector.Builder b) {
+        endGesture();
+        shapes = b.build(++version);
+    }
+
+    /// journal the open scale gesture, if any, so it goes in ahead of the next edit
+    private void endGesture() {
+        if (gesture != null) {
+            ScaleGesture g = gesture;
+            gesture = null;
+            if (journal != null) journal.set(g.published, g.indices, g.edited);
+        }
+    }
+
+    /// start decoding the shape's image, or those in a group, so they're ready when drawn
+    private static void prefetch(IShape s) {
+        if (s instanceof ImageShape im) {
+            ImageCache.shared().load(im.getImage());
+        } else if (s instanceof Group g) {
+            for (int i = 0; i < g.size(); i++) {
+                prefetch(g.child(i));
+            }
+        }
+    }
+
+    /**
+     * Replace every selected shape with an edited copy, and publish the
+     * result as one new version. Unselected shapes are shared untouched.
+     * Callers must hold the scene's monitor, so they can journal the edit
+     * under the same version.
+     * @param edit
+     * @return the indices of the edited shapes, or null if none were selected
+     */
+    private int[] editSelected(Consumer<IShape> edit) {
+        ShapeVector current = shapes;
+        ShapeVector.Builder b = current.builder();
+        int[] indices = new int[current.size()];
+        int n = 0;
+        for (int i = 0; i < current.size(); i++) {
+            IShape s = current.get(i);
+            if (s.isSelected()) {
+                IShape c = copyOf(s);
+                edit.accept(c);
+                b.set(i, c);
+                indices[n++] = i;
+            }
+        }
+        if (n == 0) {
+            return null;
+        }
+        publish(b);
+        return Arrays.copyOf(indices, n);
+    }
+
+    /// scaleUp and scaleDown both just multiply; pick by direction
+    static void scale(IShape s, double factor) {
+        if (factor >= 1) s.scaleUp(factor);
+        else s.scaleDown(factor);
+    }
+
+    /// copy() doesn't carry over the selection, but edits need to
+    static IShape copyOf(IShape s) {
+        IShape c = s.copy();
+        c.setSelected(s.isSelected());
+        return c;
     }
     
+    /**
+     * Write the given shapes in the scene file format, one per line,
+     * straight to the writer. Pass getShapes() to save a consistent
+     * snapshot of a scene that may be edited at the same time.
+     * @param shapes
+     * @param out
+     * @throws IOException
+     */
+    public static void write(List<IShape> shapes, Writer out) throws IOException {
+        for (int i = 0; i < shapes.size(); i++) {
+            out.write(shapes.get(i).toString());
+            out.write("\n");
+        }
+    }
+
     @Override   
     public String toString() {
-        String shapeText = "";
-        for (IShape s : shapeList) {
-            shapeText += s.toString() + "\n";
+        StringBuilder shapeText = new StringBuilder();
+        for (IShape s : shapes) {
+            shapeText.append(s.toString()).append("\n");
         }
-        return shapeText;
+        return shapeText.toString();
     }
 
-    public void MoveSelected(int x, int y)
+    public synchronized void MoveSelected(int x, int y)
     {
-        for (IShape shapes : shapeList)
-            if(shapes.isSelected()) shapes.move(x,-y);
-        
+        transformSelected(Transform.translate(x, -y));
     }
 
     /// recolors selected shapes to currently selected color in menu
-    public void recolorSelectedShapes(Color color)
+    public synchronized void recolorSelectedShapes(Color color)
+    {
+        int[] edited = editSelected((s) -> s.setColor(color));
+        if (edited != null && journal != null) journal.recolored(version, edited, color.getRGB());
+    }
+
+    /// scales selected shapes by the given factor, about the center of the selection
+    public synchronized void scaleSelected(double factor)
+    {
+        scaleSelected(factor, 0, 0);
+    }
+
+    /**
+     * Scale the selected shapes about their centroid (the mean of their
+     * centers), then move them, as one edit.
+     * @param factor
+     * @param dx
+     * @param dy
+     * @return the transform that was applied, or null if nothing was selected
+     */
+    public synchronized Transform scaleSelected(double factor, int dx, int dy)
+    {
+        ShapeVector current = shapes;
+        double x = 0, y = 0;
+        int n = 0;
+        for (int i = 0; i < current.size(); i++) {
+            IShape s = current.get(i);
+            if (s.isSelected()) {
+                BoundingBox b = s.getBoundingBox();
+                x += (b.getLeft() + b.getRight()) / 2.0;
+                y += (b.getTop() + b.getBottom()) / 2.0;
+                n++;
+            }
+        }
+        if (n == 0) {
+            return null;
+        }
+        Transform t = new Transform(factor, x / n, y / n, dx, dy);
+        transformSelected(t);
+        return t;
+    }
+
+    /**
+     * Apply the transform to copies of all the selected shapes and publish
+     * them as one version; the spatial index is rebuilt when next needed,
+     * as after any other edit. Big selections are
+     * copied and transformed in parallel chunks on the common fork/join
+     * pool; only storing them in the new version is sequential.
+     * @param t
+     */
+    synchronized void transformSelected(Transform t)
     {
-        for (IShape s : shapeList)
-            if(s.isSelected()) s.setColor(color);
-        
+        ShapeVector current = shapes;
+        IntList selected = new IntList();
+        for (int i = 0; i < current.size(); i++) {
+            if (current.get(i).isSelected()) selected.add(i);
+        }
+        int n = selected.size();
+        if (n == 0) {
+            return;
+        }
+        int[] indices = selected.toArray();
+        IShape[] edited = transform(k -> current.get(indices[k]), n, t);
+        ShapeVector.Builder b = current.builder();
+        for (int k = 0; k < n; k++) {
+            b.set(indices[k], edited[k]);
+        }
+        publish(b);
+        if (journal != null) {
+            if (t.isTranslation()) journal.moved(version, indices, t.dx, t.dy);
+            else journal.transformed(version, indices, t);
+        }
+    }
+
+    /// transformed copies of the shapes shapes.apply(0) to shapes.apply(n - 1)
+    static IShape[] transform(IntFunction<IShape> shapes, int n, Transform t)
+    {
+        IShape[] edited = new IShape[n];
+        int chunks = (n + PARALLEL_CHUNK - 1) / PARALLEL_CHUNK;
+        IntStream range = IntStream.range(0, chunks);
+        if (chunks > 1) {
+            range = range.parallel();
+        }
+        range.forEach(chunk -> {
+            for (int k = chunk * PARALLEL_CHUNK, end = Math.min(n, k + PARALLEL_CHUNK); k < end; k++) {
+                IShape c = copyOf(shapes.apply(k));
+                t.apply(c);
+                edited[k] = c;
+            }
+        });
+        return edited;
+    }
+
+    /**
+     * Start scaling the selection continuously, e.g. with the mouse wheel.
+     * See ScaleGesture.
+     * @return null if nothing is selected
+     */
+    public synchronized ScaleGesture beginScale()
+    {
+        endGesture();
+        ShapeVector current = shapes;
+        IntList selected = new IntList();
+        for (int i = 0; i < current.size(); i++) {
+            if (current.get(i).isSelected()) selected.add(i);
+        }
+        if (selected.size() == 0) {
+            return null;
+        }
+        return new ScaleGesture(current, selected.toArray());
+    }
+
+    /**
+     * A scale of the selection that is updated many times a second. Every
+     * update scales the shapes as they were when the gesture began, by the
+     * total factor so far, about their centroid at that time; so sizes
+     * don't drift from rounding many small steps, and each update only
+     * touches the selected shapes and the chunks of the vector holding
+     * them. The spatial index is left to be rebuilt when it's next needed
+     * instead of on every update.
+     *
+     * Updates aren't journaled one by one: the gesture's final shapes are
+     * journaled once, by commit(), or by whatever edit comes next if that
+     * is first, so the journal never sees an edit made on top of an
+     * update it doesn't have.
+     */
+    public class ScaleGesture
+    {
+        private final int[] indices;
+        private final IShape[] originals;
+        private final double pivotX;
+        private final double pivotY;
+        private long published;
+        // the shapes of the latest update, which is version published
+        private IShape[] edited;
+
+        private ScaleGesture(ShapeVector current, int[] indices)
+        {
+            this.indices = indices;
+            this.originals = new IShape[indices.length];
+            double x = 0, y = 0;
+            for (int k = 0; k < indices.length; k++) {
+                IShape s = current.get(indices[k]);
+                originals[k] = s;
+                BoundingBox b = s.getBoundingBox();
+                x += (b.getLeft() + b.getRight()) / 2.0;
+                y += (b.getTop() + b.getBottom()) / 2.0;
+            }
+            this.pivotX = x / indices.length;
+            this.pivotY = y / indices.length;
+            this.published = current.version();
+        }
+
+        /**
+         * Publish the selection scaled by the given total factor.
+         * @param factor
+         * @return false if the scene was changed by something else since
+         *      the gesture began; the gesture is over and nothing was done
+         */
+        public boolean scaleTo(double factor)
+        {
+            synchronized (Scene.this) {
+                ShapeVector current = shapes;
+                if (current.version() != published) {
+                    return false;
+                }
+                if (Math.abs(factor - 1) < 1e-9) {
+                    factor = 1; // back where it started, give or take rounding
+                }
+                Transform t = Transform.scale(factor, pivotX, pivotY);
+                edited = transform(k -> originals[k], originals.length, t);
+                ShapeVector.Builder b = current.builder();
+                for (int k = 0; k < indices.length; k++) {
+                    b.set(indices[k], edited[k]);
+                }
+                // not publish(), which would journal the previous update
+                shapes = b.build(++version);
+                published = version;
+                gesture = this;
+                return true;
+            }
+        }
+
+        /**
+         * End the gesture, journaling the latest update as one edit.
+         */
+        public void commit()
+        {
+            synchronized (Scene.this) {
+                if (gesture == this) {
+                    endGesture();
+                }
+            }
+        }
     }
+
     /// selects all shapes
     public void selectAll()
     {
-        shapeList.forEach((s) -> {s.setSelected(true);});
+        shapes.forEach((s) -> {s.setSelected(true);});
     }
 
     /// deselects all currently selected shapes
     public void deselectAll()
     {
-         shapeList.forEach((s) -> {s.setSelected(false);});
+         shapes.forEach((s) -> {s.setSelected(false);});
     }    
 
-    /// deletes all selected shapes
-    public void deleteAllSelected()
+    /**
+     * Ways to change the stacking (z) order of the selection. The z-order
+     * is the position in the scene: later shapes are drawn on top.
+     */
+    public enum ZOrder { FRONT, BACK, RAISE, LOWER }
+
+    /**
+     * Move the selected shapes in the stacking order, as one edit.
+     * Drawing, the display list and topmostAt() all follow the new order.
+     *
+     * This is O(n) in the size of the scene, like every edit of the
+     * selection: finding the selected shapes is a scan, and the builder
+     * copies the table of chunk pointers. Only the moved chunks are
+     * copied, though (see reorder()).
+     * @param order
+     */
+    public synchronized void reorderSelected(ZOrder order)
     {
-        for (int i = 0; i < shapeList.size(); i++) {
-            if(shapeList.get(i).isSelected()) {
-                shapeList.remove(shapeList.get(i)); 
-                i--;
-            }
+        ShapeVector current = shapes;
+        IntList selected = new IntList();
+        for (int i = 0; i < current.size(); i++) {
+            if (current.get(i).isSelected()) selected.add(i);
+        }
+        if (selected.size() == 0) {
+            return;
         }
+        int[] indices = selected.toArray();
+        ShapeVector.Builder b = current.builder();
+        reorder(b, indices, order);
+        publish(b);
+        if (journal != null) journal.reordered(version, indices, order);
     }
 
-    public void loadFromFile(File selectedFile) throws FileNotFoundException {
-        // TODO Auto-generated method stub
-        shapeList.clear();
-        Scanner scan = new Scanner(new FileInputStream(selectedFile));
-        while(scan.hasNext())
-        {
-            String shapeType = scan.next().toUpperCase();
-
-            switch (shapeType){
-                case "SQUARE" -> {
-                    int x = scan.nextInt();
-                    int y = scan.nextInt();
-                    int side = scan.nextInt();
-                    String colorStr = scan.next();
-                    boolean selected = scan.nextBoolean();
-                    Color color = Util.stringToColor(colorStr);
-                    Square sq = new Square(color, x, y, side);
-                    sq.setSelected(selected);
-                    addShape(sq);
+    /**
+     * Reorder the shapes at the given (ascending) positions. Only the
+     * positions whose shape actually changes are written, so the chunks
+     * of the vector that don't move stay shared: raise and lower write
+     * two slots per shape, front and back only the range from the first
+     * (or last) selected shape on.
+     * @param b
+     * @param indices
+     * @param order
+     */
+    static void reorder(ShapeVector.Builder b, int[] indices, ZOrder order)
+    {
+        int n = b.size();
+        int k = indices.length;
+        switch (order) {
+            case FRONT -> {
+                IShape[] moving = new IShape[k];
+                int w = indices[0];
+                for (int i = indices[0], j = 0; i < n; i++) {
+                    if (j < k && indices[j] == i) {
+                        moving[j++] = b.get(i);
+                    } else {
+                        b.set(w++, b.get(i));
+                    }
+                }
+                for (IShape s : moving) {
+                    b.set(w++, s);
+                }
+            }
+            case BACK -> {
+                IShape[] moving = new IShape[k];
+                int w = indices[k - 1];
+                for (int i = indices[k - 1], j = k - 1; i >= 0; i--) {
+                    if (j >= 0 && indices[j] == i) {
+                        moving[j--] = b.get(i);
+                    } else {
+                        b.set(w--, b.get(i));
+                    }
                 }
-                case "RECTANGLE" -> {
-                    int x = scan.nextInt();
-                    int y = scan.nextInt();
-                    int side = scan.nextInt();
-                    int height = scan.nextInt();
-                    String colorStr = scan.next();
-                    boolean selected = scan.nextBoolean();
-                    Color color = Util.stringToColor(colorStr);
-                    Rectangle rt = new Rectangle(new Point(x,y), side, height, color);
-                    rt.setSelected(selected);
-                    addShape(rt);
+                for (int j = k - 1; j >= 0; j--) {
+                    b.set(w--, moving[j]);
                 }
-                case "CIRCLE" -> {
-                    int x = scan.nextInt();
-                    int y = scan.nextInt();
-                    int diameter = scan.nextInt();
-                    String colorStr = scan.next();
-                    boolean selected = scan.nextBoolean();
-                    Color color = Util.stringToColor(colorStr);
-                    Circle cr = new Circle(color, new Point(x,y), diameter);
-                    cr.setSelected(selected);
-                    addShape(cr);
+            }
+            case RAISE -> {
+                // from the top down, so a run of selected shapes moves up together
+                int limit = n;
+                for (int j = k - 1; j >= 0; j--) {
+                    int p = indices[j];
+                    if (p + 1 < limit) {
+                        swap(b, p, p + 1);
+                        limit = p + 1;
+                    } else {
+                        limit = p;
+                    }
                 }
             }
+            case LOWER -> {
+                int limit = -1;
+                for (int j = 0; j < k; j++) {
+                    int p = indices[j];
+                    if (p - 1 > limit) {
+                        swap(b, p, p - 1);
+                        limit = p - 1;
+                    } else {
+                        limit = p;
+                    }
+                }
+            }
+        }
+    }
+
+    private static void swap(ShapeVector.Builder b, int i, int j)
+    {
+        IShape s = b.get(i);
+        b.set(i, b.get(j));
+        b.set(j, s);
+    }
+
+    /**
+     * Select exactly the shapes that match the query.
+     *
+     * If the query has type, color or region terms that must all hold,
+     * only the shapes the indexes give for the most selective of them
+     * are tested; otherwise every shape is. Either way, big scenes are
+     * tested in parallel.
+     * @param query
+     * @return the number of shapes selected
+     */
+    public int selectWhere(ShapeQuery query)
+    {
+        ShapeVector current = shapes;
+        int[] candidates = candidates(query, current);
+        if (candidates == null) {
+            return parallelIfBig(IntStream.range(0, current.size()), current.size())
+                    .map(i -> select(current.get(i), query))
+                    .sum();
+        }
+        parallelIfBig(IntStream.range(0, current.size()), current.size())
+                .forEach(i -> current.get(i).setSelected(false));
+        return parallelIfBig(IntStream.of(candidates), candidates.length)
+                .map(i -> select(current.get(i), query))
+                .sum();
+    }
+
+    private static int select(IShape s, ShapeQuery query) {
+        boolean match = query.test(s);
+        s.setSelected(match);
+        return match ? 1 : 0;
+    }
+
+    private static IntStream parallelIfBig(IntStream stream, int n) {
+        return n >= PARALLEL_CHUNK ? stream.parallel() : stream;
+    }
+
+    /**
+     * The positions of the shapes that could match the query, from the
+     * index that gives the fewest, or null if it has to be checked
+     * against every shape. The spatial index is only searched when the
+     * type and color lists don't already cut the scene down to a 16th.
+     */
+    private int[] candidates(ShapeQuery query, ShapeVector current) {
+        int[] best = null;
+        ShapeQuery.Inside region = null;
+        for (ShapeQuery term : query.terms()) {
+            int[] list = null;
+            if (term instanceof ShapeQuery.TypeIs t) {
+                list = attributes(current).ofType(t.type);
+            } else if (term instanceof ShapeQuery.ColorIs c) {
+                list = attributes(current).ofColor(c.argb);
+            } else if (term instanceof ShapeQuery.Inside in) {
+                region = in;
+            }
+            if (list != null && (best == null || list.length < best.length)) {
+                best = list;
+            }
+        }
+        if (region != null && (best == null || best.length > current.size() / 16)) {
+            IntList hits = new IntList();
+            index(current).search(region.left, region.top, region.right, region.bottom, hits::add);
+            if (best == null || hits.size() < best.length) {
+                best = hits.toArray();
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Select exactly the shapes that overlap some other shape.
+     * @return the overlapping pairs and clusters that were found
+     */
+    public OverlapAnalysis.Result selectOverlapping()
+    {
+        ShapeVector current = shapes;
+        OverlapAnalysis.Result result = OverlapAnalysis.analyze(current);
+        for (int i = 0; i < current.size(); i++) {
+            current.get(i).setSelected(result.isOverlapping(i));
+        }
+        return result;
+    }
+
+    /// deletes all selected shapes
+    public void deleteAllSelected()
+    {
+        removeWhere(IShape::isSelected);
+    }
+
+    /**
+     * Replace the shapes in this scene with the ones in the given file.
+     * The file is parsed completely before anything is published, so
+     * readers see either the old scene or the new one.
+     * @param selectedFile
+     * @throws FileNotFoundException
+     */
+    public void loadFromFile(File selectedFile) throws FileNotFoundException {
+        ShapeVector.Builder loaded = ShapeVector.EMPTY.builder();
+        try (SceneReader reader = new SceneReader(selectedFile)) {
+            for (IShape s = reader.next(); s != null; s = reader.next()) {
+                prefetch(s);
+                loaded.add(s);
+            }
+        }
+        synchronized (this) {
+            publish(loaded);
+            if (journal != null) journal.replaced(version);
         }
-        scan.close();   
     }
 
 
     public Scene copy()
     {
         Scene copyScene = new Scene();
-        for (IShape s : shapeList) {
-            copyScene.addShape(s.copy());
+        ShapeVector current = shapes;
+        ShapeVector.Builder b = ShapeVector.EMPTY.builder();
+        b.ensureCapacity(current.size());
+        for (IShape s : current) {
+            b.add(s.copy());
         }
+        copyScene.publish(b);
 
         return copyScene;
     }
+
+    /**
+     * Return a view of this scene that can be handed to another thread
+     * for drawing. The shapes are shared (the vector is immutable), and
+     * the drag rectangle is copied, so this is cheap and the snapshot
+     * draws exactly like this scene did when it was taken.
+     * @return
+     */
+    public Scene snapshot()
+    {
+        Scene snap = new Scene();
+        snap.shapes = shapes;
+        snap.isDrag = isDrag;
+        snap.hover = hover;
+        snap.topmostVersion = topmostVersion;
+        snap.selectRect = selectRect == null ? null : (SelectionRectangle)selectRect.copy();
+        return snap;
+    }
     
-    public void update(Scene other)
+    /**
+     * Go back (or forward) to shapes this scene had earlier, as kept for
+     * undo and redo. The vector is shared, not copied. Selection isn't
+     * part of it: the flags on its shapes are whatever was last set on
+     * them, maybe while they were in some other version, so they're all
+     * cleared and nothing is selected afterwards.
+     * @param earlier
+     */
+    public synchronized void update(ShapeVector earlier)
     {
-        this.shapeList = other.shapeList;
+        for (IShape s : earlier) {
+            s.setSelected(false);
+        }
+        endGesture();
+        this.shapes = earlier.withVersion(++version);
+        if (journal != null) journal.replaced(version);
     }
 }
@@ -0,0 +1,574 @@
+package drawshapes;
+
+import java.awt.Color;
+import java.awt.Point;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Diff and three-way merge for scene files.
+ *
+ * Shapes are read one at a time with SceneReader and kept only as
+ * packed int records (type, x, y, width, height, color), never as a
+ * Scene. A group is one record, with the records of its members (in
+ * the group's coordinates) kept next to it, so it's diffed and merged
+ * as a whole and written back out as a group. Shapes are matched
+ * between two files in a few hashing passes,
+ * each pairing up whatever the previous passes left over:
+ * <ol>
+ * <li>same content: unchanged</li>
+ * <li>same type and position: recolored and/or resized</li>
+ * <li>same type, size and color: moved</li>
+ * </ol>
+ * Anything still unmatched was removed (old file) or added (new file).
+ * Every pass is a hash lookup per shape, so the whole diff is close
+ * to linear.
+ *
+ * Run from the command line:
+ * <pre>
+ *   java drawshapes.SceneDiff old.scene new.scene
+ *   java drawshapes.SceneDiff base.scene ours.scene theirs.scene merged.scene
+ * </pre>
+ */
+public class SceneDiff
+{
+    private static final int TYPE = 0;
+    private static final int X = 1;
+    private static final int Y = 2;
+    private static final int W = 3;
+    private static final int H = 4;
+    private static final int COLOR = 5;
+    private static final int FIELDS = 6;
+
+    // field groups used for matching
+    private static final int[] CONTENT = {TYPE, X, Y, W, H, COLOR};
+    private static final int[] PLACE = {TYPE, X, Y};
+    private static final int[] LOOK = {TYPE, W, H, COLOR};
+    // field groups that are edited and merged separately
+    private static final int[] POSITION = {X, Y};
+    private static final int[] SIZE = {W, H};
+    private static final int[] PAINT = {COLOR};
+
+    /**
+     * The shapes of one scene file, packed FIELDS ints per shape. Where
+     * a field only holds a hash (see ShapeCodec.fields()), what it's a
+     * hash of is kept next to the record, as its extra, and is what
+     * shapes are compared on.
+     */
+    public static class Records {
+        private int[] data = new int[FIELDS * 64];
+        private int size;
+        // per record: a polygon's or polyline's vertices, an image (for
+        // its path), a label's text, a group's members, or null
+        private Object[] extras = new Object[64];
+
+        void add(int[] f, Object extra) {
+            if ((size + 1) * FIELDS > data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            if (size == extras.length) {
+                extras = Arrays.copyOf(extras, size * 2);
+            }
+            System.arraycopy(f, 0, data, size * FIELDS, FIELDS);
+            extras[size] = extra;
+            size++;
+        }
+
+        void addShape(IShape s) {
+            int[] f = ShapeCodec.fields(s);
+            Object extra = null;
+            if (s instanceof Group g) {
+                Records members = new Records();
+                for (int i = 0; i < g.size(); i++) {
+                    members.addShape(g.child(i));
+                }
+                extra = members;
+            } else if (s instanceof Polyline pl) {
+                extra = pl.localVertices();
+            } else if (s instanceof ImageShape im) {
+                extra = im;
+            } else if (s instanceof TextLabel tl) {
+                extra = tl.getText();
+            }
+            add(f, extra);
+        }
+
+        /// build the shape for a record of these (or merged) records
+        IShape shape(int[] f, Object extra) {
+            if (f[TYPE] == ShapeCodec.POLYGON || f[TYPE] == ShapeCodec.POLYLINE) {
+                Point anchor = new Point(f[X], f[Y]);
+                int[] xy = (int[]) extra;
+                Color color = Palette.color(f[COLOR]);
+                return f[TYPE] == ShapeCodec.POLYGON ? new Polygon(anchor, xy, color) : new Polyline(anchor, xy, color);
+            }
+            if (f[TYPE] == ShapeCodec.IMAGE) {
+                ImageShape im = (ImageShape) extra;
+                return new ImageShape(new Point(f[X], f[Y]), f[W], f[H], im.getPath(), im.getDir());
+            }
+            if (f[TYPE] == ShapeCodec.GROUP) {
+                Records members = (Records) extra;
+                IShape[] children = new IShape[members.size()];
+                for (int i = 0; i < children.length; i++) {
+                    children[i] = members.shape(members.fields(i), members.extra(i));
+                }
+                return new Group(new Point(f[X], f[Y]), children);
+            }
+            if (f[TYPE] == ShapeCodec.TEXT) {
+                return new TextLabel(new Point(f[X], f[Y]), (String) extra, f[W], Palette.color(f[COLOR]));
+            }
+            return ShapeCodec.fromFields(f);
+        }
+
+        public int size() {
+            return size;
+        }
+
+        int get(int record, int field) {
+            return data[record * FIELDS + field];
+        }
+
+        int[] fields(int record) {
+            return Arrays.copyOfRange(data, record * FIELDS, (record + 1) * FIELDS);
+        }
+
+        Object extra(int record) {
+            return extras[record];
+        }
+
+        /// the same shapes in the same order?
+        boolean sameAs(Records other) {
+            if (size != other.size) {
+                return false;
+            }
+            for (int i = 0; i < size; i++) {
+                for (int k = 0; k < FIELDS; k++) {
+                    if (get(i, k) != other.get(i, k)) {
+                        return false;
+                    }
+                }
+                if (!sameExtra(extra(i), other.extra(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /// read a scene file without building shapes for more than one line at a time
+        public static Records read(Reader in) {
+            Records r = new Records();
+            try (SceneReader reader = new SceneReader(in)) {
+                for (IShape s = reader.next(); s != null; s = reader.next()) {
+                    r.addShape(s);
+                }
+            }
+            return r;
+        }
+
+        public static Records read(File file) throws IOException {
+            Records r = new Records();
+            try (SceneReader reader = new SceneReader(file)) {
+                for (IShape s = reader.next(); s != null; s = reader.next()) {
+                    r.addShape(s);
+                }
+            }
+            return r;
+        }
+
+        public static Records of(List<IShape> shapes) {
+            Records r = new Records();
+            for (IShape s : shapes) {
+                r.addShape(s);
+            }
+            return r;
+        }
+    }
+
+    public enum Kind { ADDED, REMOVED, MOVED, RECOLORED, RESIZED }
+
+    /**
+     * One step of an edit script.
+     */
+    public static class Edit {
+        public final Kind kind;
+        /// the shape before (null if added) and after (null if removed)
+        final int[] before;
+        final int[] after;
+
+        // for a resized label: did its text change too?
+        private final boolean textChanged;
+
+        Edit(Kind kind, int[] before, int[] after) {
+            this(kind, before, after, false);
+        }
+
+        Edit(Kind kind, int[] before, int[] after, boolean textChanged) {
+            this.kind = kind;
+            this.before = before;
+            this.after = after;
+            this.textChanged = textChanged;
+        }
+
+        @Override
+        public String toString() {
+            return switch (kind) {
+                case ADDED -> "+ " + record(after);
+                case REMOVED -> "- " + record(before);
+                case MOVED -> "moved " + record(before) + " to " + after[X] + " " + after[Y];
+                case RECOLORED -> after[TYPE] == ShapeCodec.IMAGE
+                        ? "changed the file of " + record(before)
+                        : "recolored " + record(before) + " to " + colorName(after[COLOR]);
+                case RESIZED -> after[TYPE] == ShapeCodec.GROUP
+                        ? "changed the shapes in " + record(before)
+                        : after[TYPE] == ShapeCodec.POLYGON || after[TYPE] == ShapeCodec.POLYLINE
+                        ? "reshaped " + record(before) + " to " + after[W] + " vertices"
+                        : after[TYPE] == ShapeCodec.TEXT
+                        ? (textChanged ? "edited " : "resized ") + record(before) + " to size " + after[W]
+                        : "resized " + record(before) + " to " + after[W] + " " + after[H];
+            };
+        }
+    }
+
+    private final Records before;
+    private final Records after;
+    // index of the matching shape in the other file, or -1
+    private final int[] matchBefore;
+    private final int[] matchAfter;
+
+    private SceneDiff(Records before, Records after)
+    {
+        this.before = before;
+        this.after = after;
+        this.matchBefore = new int[before.size()];
+        this.matchAfter = new int[after.size()];
+        Arrays.fill(matchBefore, -1);
+        Arrays.fill(matchAfter, -1);
+        pair(CONTENT);
+        pair(PLACE);
+        pair(LOOK);
+    }
+
+    /**
+     * Compare two scenes.
+     * @param before
+     * @param after
+     * @return
+     */
+    public static SceneDiff compare(Records before, Records after)
+    {
+        return new SceneDiff(before, after);
+    }
+
+    /// match up still-unmatched shapes that agree on the given fields
+    private void pair(int[] key)
+    {
+        Map<Long, ArrayDeque<Integer>> candidates = new HashMap<>();
+        for (int j = 0; j < after.size(); j++) {
+            if (matchAfter[j] < 0) {
+                candidates.computeIfAbsent(hash(after, j, key), k -> new ArrayDeque<>()).add(j);
+            }
+        }
+        for (int i = 0; i < before.size(); i++) {
+            if (matchBefore[i] >= 0) {
+                continue;
+            }
+            ArrayDeque<Integer> queue = candidates.get(hash(before, i, key));
+            if (queue == null) {
+                continue;
+            }
+            for (Integer j : queue) {
+                if (same(before, i, after, j, key)) {
+                    queue.remove(j);
+                    matchBefore[i] = j;
+                    matchAfter[j] = i;
+                    break;
+                }
+            }
+        }
+    }
+
+    private static long hash(Records r, int i, int[] key)
+    {
+        int[] f = new int[key.length];
+        for (int k = 0; k < key.length; k++) {
+            f[k] = r.get(i, key[k]);
+        }
+        return ShapeCodec.hash(f);
+    }
+
+    private static boolean same(Records a, int i, Records b, int j, int[] key)
+    {
+        for (int k : key) {
+            if (a.get(i, k) != b.get(j, k)) {
+                return false;
+            }
+        }
+        return !covers(key, carrier(a.get(i, TYPE))) || sameExtra(a.extra(i), b.extra(j));
+    }
+
+    /// the field that holds a hash of a record's extra, or -1 if it has none
+    private static int carrier(int type)
+    {
+        return switch (type) {
+            case ShapeCodec.POLYGON, ShapeCodec.POLYLINE, ShapeCodec.TEXT, ShapeCodec.GROUP -> H;
+            case ShapeCodec.IMAGE -> COLOR;
+            default -> -1;
+        };
+    }
+
+    private static boolean covers(int[] fields, int field)
+    {
+        for (int f : fields) {
+            if (f == field) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean sameExtra(Object a, Object b)
+    {
+        if (a instanceof int[] xy) {
+            return b instanceof int[] other && Arrays.equals(xy, other);
+        }
+        if (a instanceof ImageShape im) {
+            return b instanceof ImageShape other && im.getPath().equals(other.getPath());
+        }
+        if (a instanceof Records members) {
+            return b instanceof Records other && members.sameAs(other);
+        }
+        return Objects.equals(a, b);
+    }
+
+    /**
+     * The edit script that turns the first scene into the second.
+     * A shape that was moved and recolored gives two edits.
+     * @return
+     */
+    public List<Edit> edits()
+    {
+        List<Edit> edits = new ArrayList<>();
+        for (int i = 0; i < before.size(); i++) {
+            int j = matchBefore[i];
+            if (j < 0) {
+                edits.add(new Edit(Kind.REMOVED, before.fields(i), null));
+                continue;
+            }
+            int[] b = before.fields(i);
+            int[] a = after.fields(j);
+            Object bx = before.extra(i);
+            Object ax = after.extra(j);
+            if (differs(b, bx, a, ax, POSITION)) {
+                edits.add(new Edit(Kind.MOVED, b, a));
+            }
+            if (differs(b, bx, a, ax, PAINT)) {
+                edits.add(new Edit(Kind.RECOLORED, b, a));
+            }
+            if (differs(b, bx, a, ax, SIZE)) {
+                edits.add(new Edit(Kind.RESIZED, b, a, !Objects.equals(bx, ax)));
+            }
+        }
+        for (int j = 0; j < after.size(); j++) {
+            if (matchAfter[j] < 0) {
+                edits.add(new Edit(Kind.ADDED, null, after.fields(j)));
+            }
+        }
+        return edits;
+    }
+
+    /**
+     * Result of a three-way merge.
+     */
+    public static class Merge {
+        public final Records merged = new Records();
+        public final List<String> conflicts = new ArrayList<>();
+    }
+
+    /**
+     * Merge two edited versions of a common base. Position, size and color
+     * are merged separately, so one side moving a shape and the other
+     * recoloring it is not a conflict. Where both sides changed the same
+     * thing differently, or one side removed a shape the other changed,
+     * ours wins and a conflict is reported.
+     *
+     * @param base
+     * @param ours
+     * @param theirs
+     * @return
+     */
+    public static Merge merge(Records base, Records ours, Records theirs)
+    {
+        SceneDiff d1 = compare(base, ours);
+        SceneDiff d2 = compare(base, theirs);
+        Merge m = new Merge();
+        for (int i = 0; i < base.size(); i++) {
+            int[] b = base.fields(i);
+            Object bx = base.extra(i);
+            int oi = d1.matchBefore[i];
+            int ti = d2.matchBefore[i];
+            int[] o = oi < 0 ? null : ours.fields(oi);
+            int[] t = ti < 0 ? null : theirs.fields(ti);
+            Object ox = oi < 0 ? null : ours.extra(oi);
+            Object tx = ti < 0 ? null : theirs.extra(ti);
+            if (o == null || t == null) {
+                int[] survivor = o == null ? t : o;
+                if (survivor != null && differs(survivor, o == null ? tx : ox, b, bx, CONTENT)) {
+                    // one side removed it, the other changed it
+                    m.conflicts.add("removed on one side, changed on the other: " + record(b));
+                    if (o != null) {
+                        m.merged.add(o, ox);
+                    }
+                }
+                continue;
+            }
+            int[] result = b.clone();
+            Object[] extra = {bx};
+            mergeGroup(m, b, bx, o, ox, t, tx, result, extra, POSITION, "position");
+            String size = b[TYPE] == ShapeCodec.GROUP ? "members" : "size";
+            mergeGroup(m, b, bx, o, ox, t, tx, result, extra, SIZE, size);
+            mergeGroup(m, b, bx, o, ox, t, tx, result, extra, PAINT, "color");
+            m.merged.add(result, extra[0]);
+        }
+        // shapes added on either side; the same shape added on both sides only once
+        Map<Long, ArrayDeque<Integer>> addedByUs = new HashMap<>();
+        for (int j = 0; j < ours.size(); j++) {
+            if (d1.matchAfter[j] < 0) {
+                m.merged.add(ours.fields(j), ours.extra(j));
+                addedByUs.computeIfAbsent(hash(ours, j, CONTENT), k -> new ArrayDeque<>()).add(j);
+            }
+        }
+        for (int j = 0; j < theirs.size(); j++) {
+            if (d2.matchAfter[j] < 0) {
+                ArrayDeque<Integer> same = addedByUs.get(hash(theirs, j, CONTENT));
+                Integer match = null;
+                if (same != null) {
+                    for (Integer k : same) {
+                        if (same(ours, k, theirs, j, CONTENT)) {
+                            match = k;
+                            break;
+                        }
+                    }
+                }
+                if (match != null) {
+                    same.remove(match);
+                } else {
+                    m.merged.add(theirs.fields(j), theirs.extra(j));
+                }
+            }
+        }
+        return m;
+    }
+
+    /// merge one group of fields into result, and with it the extra if it's hashed in one of them
+    private static void mergeGroup(Merge m, int[] b, Object bx, int[] o, Object ox, int[] t, Object tx,
+            int[] result, Object[] extra, int[] group, String what)
+    {
+        boolean oursChanged = differs(b, bx, o, ox, group);
+        boolean theirsChanged = differs(b, bx, t, tx, group);
+        int[] source = oursChanged ? o : theirsChanged ? t : b;
+        if (oursChanged && theirsChanged && differs(o, ox, t, tx, group)) {
+            m.conflicts.add(what + " changed on both sides: " + record(b));
+        }
+        for (int f : group) {
+            result[f] = source[f];
+        }
+        if (covers(group, carrier(b[TYPE]))) {
+            extra[0] = oursChanged ? ox : theirsChanged ? tx : bx;
+        }
+    }
+
+    /// do two records of the same type differ in the given fields?
+    private static boolean differs(int[] a, Object ax, int[] b, Object bx, int[] group)
+    {
+        for (int f : group) {
+            if (a[f] != b[f]) {
+                return true;
+            }
+        }
+        return covers(group, carrier(a[TYPE])) && !sameExtra(ax, bx);
+    }
+
+    /// one shape in the scene file format, without the selected flag
+    static String record(int[] f)
+    {
+        if (f[TYPE] == ShapeCodec.POLYGON || f[TYPE] == ShapeCodec.POLYLINE) {
+            return String.format("%s at %d %d (%d vertices) %s", f[TYPE] == ShapeCodec.POLYGON ? "POLYGON" : "POLYLINE",
+                    f[X], f[Y], f[W], colorName(f[COLOR]));
+        }
+        if (f[TYPE] == ShapeCodec.GROUP) {
+            return String.format("GROUP at %d %d (%d shapes)", f[X], f[Y], f[W]);
+        }
+        if (f[TYPE] == ShapeCodec.TEXT) {
+            return String.format("TEXT at %d %d size %d %s", f[X], f[Y], f[W], colorName(f[COLOR]));
+        }
+        if (f[TYPE] == ShapeCodec.IMAGE) {
+            return String.format("IMAGE at %d %d size %d %d", f[X], f[Y], f[W], f[H]);
+        }
+        String line = ShapeCodec.fromFields(f).toString();
+        return line.substring(0, line.lastIndexOf(' '));
+    }
+
+    static String colorName(int argb)
+    {
+        return Palette.toString(argb);
+    }
+
+    /**
+     * Write records in the scene file format.
+     * @param records
+     * @param out
+     * @throws IOException
+     */
+    public static void write(Records records, Writer out) throws IOException
+    {
+        for (int i = 0; i < records.size(); i++) {
+            out.write(records.shape(records.fields(i), records.extra(i)).toString());
+            out.write("\n");
+        }
+    }
+
+    /**
+     * @param args two files to diff, or base, ours, theirs and an output file to merge
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length == 2) {
+            long start = System.nanoTime();
+            Records a = Records.read(new File(args[0]));
+            Records b = Records.read(new File(args[1]));
+            List<Edit> edits = compare(a, b).edits();
+            for (Edit e : edits) {
+                System.out.println(e);
+            }
+            System.out.printf("%d edits between %d and %d shapes in %.1f ms\n",
+                    edits.size(), a.size(), b.size(), (System.nanoTime() - start) / 1e6);
+        } else if (args.length == 4) {
+            Merge m = merge(Records.read(new File(args[0])), Records.read(new File(args[1])),
+                    Records.read(new File(args[2])));
+            try (Writer out = new BufferedWriter(new FileWriter(args[3]), 1 << 16)) {
+                write(m.merged, out);
+            }
+            for (String c : m.conflicts) {
+                System.out.println("CONFLICT " + c);
+            }
+            System.out.printf("merged %d shapes into %s, %d conflicts\n", m.merged.size(), args[3], m.conflicts.size());
+            if (!m.conflicts.isEmpty()) {
+                System.exit(1);
+            }
+        } else {
+            System.out.println("usage: SceneDiff old.scene new.scene");
+            System.out.println("       SceneDiff base.scene ours.scene theirs.scene merged.scene");
+            System.exit(2);
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package drawshapes;
+
+import java.awt.Color;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Headless bulk editing of scene files.
+ *
+ * A pipeline is a chain of stages. Each stage gets one shape and returns
+ * it (possibly changed) or null to drop it. The scene file is read in
+ * batches of shapes; each batch goes through the stages and is written out
+ * before the next one is read, so only one batch is ever in memory.
+ *
+ * Most stages only look at the shape they are given. Runs of such stages
+ * are applied to a batch in parallel, together with formatting the
+ * output lines; a stage that depends on the order of the shapes (such as
+ * limit) is applied to the batch in order. The output is always in input
+ * order.
+ *
+ * <pre>
+ *   java drawshapes.ScenePipeline in.scene out.scene stage...
+ * </pre>
+ * where in and out may be - for stdin/stdout and the stages are
+ * move:dx,dy scale:factor recolor:COLOR
+ * recolorIn:left,top,right,bottom:COLOR type:SQUARE|RECTANGLE|CIRCLE|...
+ * color:COLOR limit:n
+ */
+public class ScenePipeline
+{
+    /**
+     * One step of a pipeline.
+     */
+    public interface Stage {
+        /**
+         * @param s a shape owned by the pipeline, which may be changed in place
+         * @return the shape to pass on, or null to drop it
+         */
+        IShape apply(IShape s);
+
+        /// false if the result depends on which shapes came before
+        default boolean isOrderIndependent() {
+            return true;
+        }
+    }
+
+    private static final int BATCH = 8192;
+
+    private final List<Stage> stages = new ArrayList<>();
+    private long read;
+    private long written;
+
+    public ScenePipeline then(Stage stage)
+    {
+        stages.add(stage);
+        return this;
+    }
+
+    /// move every shape, like IShape.move
+    public static Stage move(int dx, int dy)
+    {
+        return s -> {
+            s.move(dx, dy);
+            return s;
+        };
+    }
+
+    /// scale every shape in place, like the p/l keys
+    public static Stage scale(double factor)
+    {
+        return s -> {
+            Scene.scale(s, factor);
+            return s;
+        };
+    }
+
+    public static Stage recolor(Color color)
+    {
+        return s -> {
+            s.setColor(color);
+            return s;
+        };
+    }
+
+    /// recolor shapes whose bounding box overlaps the region
+    public static Stage recolorIn(int left, int top, int right, int bottom, Color color)
+    {
+        return s -> {
+            BoundingBox b = s.getBoundingBox();
+            if (b.getLeft() <= right && b.getRight() >= left && b.getTop() <= bottom && b.getBottom() >= top) {
+                s.setColor(color);
+            }
+            return s;
+        };
+    }
+
+    /// keep only shapes of the given type, as named in the scene file
+    public static Stage type(String name)
+    {
+        byte type = ShapeCodec.type(name);
+        return s -> ShapeCodec.type(s) == type ? s : null;
+    }
+
+    /// keep only shapes of the given color
+    public static Stage color(Color color)
+    {
+        return s -> color.equals(s.getColor()) ? s : null;
+    }
+
+    /// keep only the first n shapes
+    public static Stage limit(long n)
+    {
+        return new Stage() {
+            private long seen;
+
+            @Override
+            public IShape apply(IShape s) {
+                return seen++ < n ? s : null;
+            }
+
+            @Override
+            public boolean isOrderIndependent() {
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Run the pipeline from one scene file to another.
+     * @param in
+     * @param out
+     * @throws IOException
+     */
+    public void run(Reader in, Writer out) throws IOException
+    {
+        IShape[] batch = new IShape[BATCH];
+        String[] lines = new String[BATCH];
+        try (SceneReader reader = new SceneReader(in)) {
+            while (true) {
+                int n = 0;
+                for (IShape s; n < BATCH && (s = reader.next()) != null; ) {
+                    batch[n++] = s;
+                }
+                if (n == 0) {
+                    break;
+                }
+                read += n;
+                process(batch, lines, n);
+                for (int i = 0; i < n; i++) {
+                    if (lines[i] != null) {
+                        out.write(lines[i]);
+                        out.write('\n');
+                        written++;
+                    }
+                }
+            }
+        }
+        out.flush();
+    }
+
+    /// push a batch through the stages, leaving the output lines (null if dropped) in lines
+    private void process(IShape[] batch, String[] lines, int n)
+    {
+        int i = 0;
+        while (i < stages.size()) {
+            int j = i;
+            if (stages.get(i).isOrderIndependent()) {
+                while (j < stages.size() && stages.get(j).isOrderIndependent()) {
+                    j++;
+                }
+                int from = i;
+                int to = j;
+                IntStream.range(0, n).parallel().forEach(k -> batch[k] = applyAll(batch[k], from, to));
+            } else {
+                j = i + 1;
+                for (int k = 0; k < n; k++) {
+                    batch[k] = applyAll(batch[k], i, j);
+                }
+            }
+            i = j;
+        }
+        IntStream.range(0, n).parallel().forEach(k -> lines[k] = batch[k] == null ? null : batch[k].toString());
+    }
+
+    private IShape applyAll(IShape s, int from, int to)
+    {
+        for (int i = from; i < to && s != null; i++) {
+            s = stages.get(i).apply(s);
+        }
+        return s;
+    }
+
+    public long getRead()
+    {
+        return read;
+    }
+
+    public long getWritten()
+    {
+        return written;
+    }
+
+    /// build a stage from its command line form, e.g. move:10,-5
+    static Stage parse(String spec)
+    {
+        String[] parts = spec.split(":");
+        String[] args = parts.length > 1 ? parts[1].split(",") : new String[0];
+        return switch (parts[0]) {
+            case "move" -> move(Integer.parseInt(args[0]), Integer.parseInt(args[1]));
+            case "scale" -> scale(Double.parseDouble(args[0]));
+            case "recolor" -> recolor(Util.stringToColor(parts[1]));
+            case "recolorIn" -> recolorIn(Integer.parseInt(args[0]), Integer.parseInt(args[1]),
+                    Integer.parseInt(args[2]), Integer.parseInt(args[3]), Util.stringToColor(parts[2]));
+            case "type" -> type(parts[1]);
+            case "color" -> color(Util.stringToColor(parts[1]));
+            case "limit" -> limit(Long.parseLong(args[0]));
+            default -> throw new IllegalArgumentException("Unknown stage: " + spec);
+        };
+    }
+
+    /**
+     * @param args input file, output file, then the stages
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length < 2) {
+            System.err.println("usage: ScenePipeline in.scene out.scene stage...");
+            System.exit(2);
+        }
+        ScenePipeline pipeline = new ScenePipeline();
+        for (int i = 2; i < args.length; i++) {
+            pipeline.then(parse(args[i]));
+        }
+        long start = System.nanoTime();
+        Reader in = args[0].equals("-") ? new InputStreamReader(System.in) : new FileReader(args[0]);
+        Writer out = new BufferedWriter(args[1].equals("-") ? new OutputStreamWriter(System.out) : new FileWriter(args[1]), 1 << 16);
+        try (in; out) {
+            pipeline.run(new BufferedReader(in, 1 << 16), out);
+        }
+        // report on stderr so the output can go to stdout
+        System.err.printf("%d shapes in, %d out in %.1f ms\n",
+                pipeline.getRead(), pipeline.getWritten(), (System.nanoTime() - start) / 1e6);
+    }
+}
@@ -0,0 +1,189 @@
+package drawshapes;
+
+import java.awt.Color;
+import java.awt.Point;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.Reader;
+import java.util.InputMismatchException;
+import java.util.Scanner;
+
+/**
+ * Reads shapes one at a time from the scene text format written by
+ * Scene.write() / toString(), e.g.
+ * 
+ *     SQUARE 100 120 100 RED false
+ *     CIRCLE 300 200 100 BLUE true
+ *     GROUP 10 0 2 false
+ *     SQUARE 100 120 100 RED false
+ *     CIRCLE 300 200 100 BLUE false
+ * 
+ * where a GROUP line gives the group's offset and is followed by that
+ * many member shapes (which may be groups) in the group's coordinates.
+ * Polygons and polylines give their vertex count, then the vertices:
+ * 
+ *     POLYGON 3 0 0 100 0 50 80 GREEN false
+ *     POLYLINE 2 10 10 200 40 #336699 false
+ * 
+ * Images give their center, size and file, with spaces in the path as
+ * %20; a relative path is relative to the scene file:
+ * 
+ *     IMAGE 200 150 320 240 photos/cat%20on%20mat.png false
+ * 
+ * Text labels give their center, font size and text, written the same way:
+ * 
+ *     TEXT 200 40 24 Hello,%20world BLUE false
+ * 
+ * Only the shape being returned is held in memory, so a file of any size
+ * can be streamed. Unknown words are skipped, like loadFromFile always did.
+ */
+public class SceneReader implements Closeable
+{
+    private final Scanner scan;
+    // image paths are relative to this, or to the working directory if null
+    private final File dir;
+
+    public SceneReader(Reader in)
+    {
+        this(in, null);
+    }
+
+    /**
+     * @param in
+     * @param dir the directory relative image paths are relative to, or null
+     */
+    public SceneReader(Reader in, File dir)
+    {
+        this.scan = new Scanner(in);
+        this.dir = dir;
+    }
+
+    public SceneReader(File file) throws FileNotFoundException
+    {
+        this(new BufferedReader(new FileReader(file), 1 << 16), file.getAbsoluteFile().getParentFile());
+    }
+
+    /**
+     * Return the next shape in the file, or null at the end.
+     * @return
+     * @throws java.util.InputMismatchException if the file is corrupted
+     */
+    public IShape next()
+    {
+        while(scan.hasNext())
+        {
+            String shapeType = scan.next().toUpperCase();
+
+            switch (shapeType){
+                case "SQUARE" -> {
+                    int x = scan.nextInt();
+                    int y = scan.nextInt();
+                    int side = scan.nextInt();
+                    String colorStr = scan.next();
+                    boolean selected = scan.nextBoolean();
+                    Color color = Util.stringToColor(colorStr);
+                    Square sq = new Square(color, x, y, side);
+                    sq.setSelected(selected);
+                    return sq;
+                }
+                case "RECTANGLE" -> {
+                    int x = scan.nextInt();
+                    int y = scan.nextInt();
+                    int side = scan.nextInt();
+                    int height = scan.nextInt();
+                    String colorStr = scan.next();
+                    boolean selected = scan.nextBoolean();
+                    Color color = Util.stringToColor(colorStr);
+                    Rectangle rt = new Rectangle(new Point(x,y), side, height, color);
+                    rt.setSelected(selected);
+                    return rt;
+                }
+                case "CIRCLE" -> {
+                    int x = scan.nextInt();
+                    int y = scan.nextInt();
+                    int diameter = scan.nextInt();
+                    String colorStr = scan.next();
+                    boolean selected = scan.nextBoolean();
+                    Color color = Util.stringToColor(colorStr);
+                    Circle cr = new Circle(color, new Point(x,y), diameter);
+                    cr.setSelected(selected);
+                    return cr;
+                }
+                case "POLYGON", "POLYLINE" -> {
+                    int[] points = new int[scan.nextInt() * 2];
+                    for (int i = 0; i < points.length; i++) {
+                        points[i] = scan.nextInt();
+                    }
+                    String colorStr = scan.next();
+                    boolean selected = scan.nextBoolean();
+                    Color color = Util.stringToColor(colorStr);
+                    Polyline pl = shapeType.equals("POLYGON") ? new Polygon(points, color) : new Polyline(points, color);
+                    pl.setSelected(selected);
+                    return pl;
+                }
+                case "IMAGE" -> {
+                    int x = scan.nextInt();
+                    int y = scan.nextInt();
+                    int width = scan.nextInt();
+                    int height = scan.nextInt();
+                    String path = Util.fromWord(scan.next());
+                    boolean selected = scan.nextBoolean();
+                    ImageShape im = new ImageShape(new Point(x, y), width, height, path, dir);
+                    im.setSelected(selected);
+                    return im;
+                }
+                case "TEXT" -> {
+                    int x = scan.nextInt();
+                    int y = scan.nextInt();
+                    int size = scan.nextInt();
+                    String text = Util.fromWord(scan.next());
+                    String colorStr = scan.next();
+                    boolean selected = scan.nextBoolean();
+                    Color color = Util.stringToColor(colorStr);
+                    TextLabel tl = new TextLabel(new Point(x, y), text, size, color);
+                    tl.setSelected(selected);
+                    return tl;
+                }
+                case "GROUP" -> {
+                    int x = scan.nextInt();
+                    int y = scan.nextInt();
+                    int count = scan.nextInt();
+                    boolean selected = scan.nextBoolean();
+                    IShape[] children = new IShape[count];
+                    for (int i = 0; i < count; i++) {
+                        children[i] = next();
+                        if (children[i] == null) {
+                            throw new InputMismatchException("GROUP of " + count + " ends after " + i);
+                        }
+                    }
+                    Group gr = new Group(new Point(x, y), children);
+                    gr.setSelected(selected);
+                    return gr;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Read every remaining shape into a new vector.
+     * @return
+     */
+    public ShapeVector readAll()
+    {
+        ShapeVector.Builder b = ShapeVector.EMPTY.builder();
+        for (IShape s = next(); s != null; s = next()) {
+            b.add(s);
+        }
+        return b.build(0);
+    }
+
+    @Override
+    public void close()
+    {
+        scan.close();
+    }
+}
@@ -1,11 +1,33 @@
 package drawshapes;
 
 import java.awt.Color;
+import java.awt.Point;
 
 public class SelectionRectangle extends Rectangle
 {
+    private static final Color SELECTION_COLOR = new Color(1,1,1,0.5f);
+
     public SelectionRectangle(int left, int right, int top, int bottom){
         super(left, right, top, bottom);
-        setColor(new Color(1,1,1,0.5f));
+        setColor(SELECTION_COLOR);
+    }
+
+    /**
+     * Move and resize this rectangle in place. Called for every mouse drag
+     * event, so it doesn't allocate anything.
+     */
+    public void setBounds(int left, int right, int top, int bottom){
+        anchorPoint.setLocation(left + (right - left)/2, top + (bottom - top)/2);
+        boundingBox.set(left, right, top, bottom);
+        width = right - left;
+        height = bottom - top;
+        version++;
+    }
+
+    @Override
+    public IShape copy()
+    {
+        return new SelectionRectangle(boundingBox.getLeft(), boundingBox.getRight(),
+                boundingBox.getTop(), boundingBox.getBottom());
     }
 }
@@ -0,0 +1,418 @@
+package drawshapes;
+
+import java.awt.Color;
+import java.awt.Point;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compact binary encoding of a single shape, used by the edit journal
+ * and its checkpoints.
+ *
+ * Every shape is a type byte followed by its fields; colors are packed
+ * ARGB ints and the selected flag is the last byte. A group is its
+ * offset and child count, then each child encoded the same way, then
+ * the selected flag; it has no color of its own. Polygons and polylines
+ * store their anchor, vertex count and then the vertices relative to
+ * the anchor, each as a zigzag varint of the step from the one before.
+ * An image is its center, size, path and the directory a relative path
+ * is relative to (empty for none), then the selected flag; like a
+ * group, it has no color. A text label is its center, font size and
+ * text.
+ *
+ * A batch of shapes (writeAll) starts with a palette table of the
+ * colors it uses, and each shape stores its color as a varint index
+ * into the table, usually a single byte.
+ *
+ * This class contains static utility methods. It doesn't
+ * make sense to create instances of this class.
+ */
+public class ShapeCodec
+{
+    static final byte SQUARE = 1;
+    static final byte RECTANGLE = 2;
+    static final byte CIRCLE = 3;
+    static final byte GROUP = 4;
+    static final byte POLYGON = 5;
+    static final byte POLYLINE = 6;
+    static final byte IMAGE = 7;
+    static final byte TEXT = 8;
+
+    // private constructor
+    private ShapeCodec() {}
+
+    public static void write(DataOutput out, IShape shape) throws IOException {
+        write(out, shape, null);
+    }
+
+    /**
+     * Write every shape, after a table of their colors.
+     * @param out
+     * @param shapes
+     * @throws IOException
+     */
+    public static void writeAll(DataOutput out, List<IShape> shapes) throws IOException {
+        Palette.Table palette = new Palette.Table();
+        for (IShape s : shapes) {
+            addColors(palette, s);
+        }
+        out.writeInt(palette.size());
+        for (int i = 0; i < palette.size(); i++) {
+            out.writeInt(palette.get(i));
+        }
+        out.writeInt(shapes.size());
+        for (IShape s : shapes) {
+            write(out, s, palette);
+        }
+    }
+
+    private static void addColors(Palette.Table palette, IShape shape) {
+        if (shape instanceof Group g) {
+            for (int i = 0; i < g.size(); i++) {
+                addColors(palette, g.child(i));
+            }
+        } else if (!(shape instanceof ImageShape)) {
+            palette.add(shape.getColor().getRGB());
+        }
+    }
+
+    /// palette null: the color is written in full
+    private static void write(DataOutput out, IShape shape, Palette.Table palette) throws IOException {
+        Point p = shape.getAnchorPoint();
+        if (shape instanceof Group g) {
+            out.writeByte(GROUP);
+            out.writeInt(p.x);
+            out.writeInt(p.y);
+            out.writeInt(g.size());
+            for (int i = 0; i < g.size(); i++) {
+                write(out, g.child(i), palette);
+            }
+            out.writeBoolean(g.isSelected());
+            return;
+        } else if (shape instanceof ImageShape im) {
+            out.writeByte(IMAGE);
+            out.writeInt(p.x);
+            out.writeInt(p.y);
+            out.writeInt(im.getWidth());
+            out.writeInt(im.getHeight());
+            out.writeUTF(im.getPath());
+            out.writeUTF(im.getDir() == null ? "" : im.getDir().getPath());
+            out.writeBoolean(im.isSelected());
+            return;
+        } else if (shape instanceof Polyline pl) {
+            out.writeByte(pl instanceof Polygon ? POLYGON : POLYLINE);
+            out.writeInt(p.x);
+            out.writeInt(p.y);
+            int[] xy = pl.localVertices();
+            writeVarInt(out, xy.length / 2);
+            for (int i = 0; i < xy.length; i++) {
+                int step = i < 2 ? xy[i] : xy[i] - xy[i - 2];
+                writeVarInt(out, (step << 1) ^ (step >> 31));
+            }
+        } else if (shape instanceof TextLabel tl) {
+            out.writeByte(TEXT);
+            out.writeInt(p.x);
+            out.writeInt(p.y);
+            out.writeInt(tl.getSize());
+            out.writeUTF(tl.getText());
+        } else if (shape instanceof Square sq) {
+            out.writeByte(SQUARE);
+            out.writeInt(p.x);
+            out.writeInt(p.y);
+            out.writeInt(sq.getWidth());
+        } else if (shape instanceof Rectangle rt) {
+            out.writeByte(RECTANGLE);
+            out.writeInt(p.x);
+            out.writeInt(p.y);
+            out.writeInt(rt.getWidth());
+            out.writeInt(rt.getHeight());
+        } else if (shape instanceof Circle cr) {
+            out.writeByte(CIRCLE);
+            out.writeInt(p.x);
+            out.writeInt(p.y);
+            out.writeInt(cr.getDiameter());
+        } else {
+            throw new UnsupportedOperationException("Can't encode shape: " + shape);
+        }
+        int argb = shape.getColor().getRGB();
+        if (palette == null) {
+            out.writeInt(argb);
+        } else {
+            writeVarInt(out, palette.indexOf(argb));
+        }
+        out.writeBoolean(shape.isSelected());
+    }
+
+    public static IShape read(DataInput in) throws IOException {
+        return read(in, null);
+    }
+
+    /**
+     * Read shapes written by writeAll().
+     * @param in
+     * @return
+     * @throws IOException
+     */
+    public static List<IShape> readAll(DataInput in) throws IOException {
+        Color[] palette = new Color[in.readInt()];
+        for (int i = 0; i < palette.length; i++) {
+            palette[i] = Palette.color(in.readInt());
+        }
+        int n = in.readInt();
+        List<IShape> shapes = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            shapes.add(read(in, palette));
+        }
+        return shapes;
+    }
+
+    private static IShape read(DataInput in, Color[] palette) throws IOException {
+        byte type = in.readByte();
+        IShape shape;
+        switch (type) {
+            case SQUARE -> {
+                int x = in.readInt();
+                int y = in.readInt();
+                int side = in.readInt();
+                shape = new Square(null, x, y, side);
+            }
+            case RECTANGLE -> {
+                int x = in.readInt();
+                int y = in.readInt();
+                int width = in.readInt();
+                int height = in.readInt();
+                shape = new Rectangle(new Point(x, y), width, height, null);
+            }
+            case CIRCLE -> {
+                int x = in.readInt();
+                int y = in.readInt();
+                int diameter = in.readInt();
+                shape = new Circle(null, new Point(x, y), diameter);
+            }
+            case POLYGON, POLYLINE -> {
+                int x = in.readInt();
+                int y = in.readInt();
+                int[] xy = new int[readVarInt(in) * 2];
+                for (int i = 0; i < xy.length; i++) {
+                    int v = readVarInt(in);
+                    int step = (v >>> 1) ^ -(v & 1);
+                    xy[i] = i < 2 ? step : xy[i - 2] + step;
+                }
+                shape = type == POLYGON ? new Polygon(new Point(x, y), xy, null) : new Polyline(new Point(x, y), xy, null);
+            }
+            case IMAGE -> {
+                int x = in.readInt();
+                int y = in.readInt();
+                int width = in.readInt();
+                int height = in.readInt();
+                String path = in.readUTF();
+                String dir = in.readUTF();
+                shape = new ImageShape(new Point(x, y), width, height, path, dir.isEmpty() ? null : new File(dir));
+                shape.setSelected(in.readBoolean());
+                return shape;
+            }
+            case TEXT -> {
+                int x = in.readInt();
+                int y = in.readInt();
+                int size = in.readInt();
+                shape = new TextLabel(new Point(x, y), in.readUTF(), size, null);
+            }
+            case GROUP -> {
+                int x = in.readInt();
+                int y = in.readInt();
+                IShape[] children = new IShape[in.readInt()];
+                for (int i = 0; i < children.length; i++) {
+                    children[i] = read(in, palette);
+                }
+                shape = new Group(new Point(x, y), children);
+                shape.setSelected(in.readBoolean());
+                return shape;
+            }
+            default -> throw new IOException("Unknown shape type: " + type);
+        }
+        if (palette == null) {
+            shape.setColor(Palette.color(in.readInt()));
+        } else {
+            int i = readVarInt(in);
+            if (i >= palette.length) {
+                throw new IOException("Color " + i + " not in palette of " + palette.length);
+            }
+            shape.setColor(palette[i]);
+        }
+        shape.setSelected(in.readBoolean());
+        return shape;
+    }
+
+    /// 7 bits a byte, low bits first; the high bit means more follow
+    private static void writeVarInt(DataOutput out, int v) throws IOException {
+        while ((v & ~0x7f) != 0) {
+            out.writeByte((v & 0x7f) | 0x80);
+            v >>>= 7;
+        }
+        out.writeByte(v);
+    }
+
+    private static int readVarInt(DataInput in) throws IOException {
+        int v = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            v |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return v;
+            }
+        }
+        throw new IOException("Bad varint");
+    }
+
+    /**
+     * The type byte a shape is written with.
+     * @param shape
+     * @return
+     */
+    static byte type(IShape shape) {
+        if (shape instanceof Group) {
+            return GROUP;
+        } else if (shape instanceof ImageShape) {
+            return IMAGE;
+        } else if (shape instanceof TextLabel) {
+            return TEXT;
+        } else if (shape instanceof Polyline) {
+            return shape instanceof Polygon ? POLYGON : POLYLINE;
+        } else if (shape instanceof Square) {
+            return SQUARE;
+        } else if (shape instanceof Rectangle) {
+            return RECTANGLE;
+        } else if (shape instanceof Circle) {
+            return CIRCLE;
+        }
+        throw new UnsupportedOperationException("Can't encode shape: " + shape);
+    }
+
+    /**
+     * The type byte of a shape named as in the scene file.
+     * @param name
+     * @return
+     * @throws IllegalArgumentException for an unknown name
+     */
+    static byte type(String name) {
+        return switch (name) {
+            case "SQUARE" -> SQUARE;
+            case "RECTANGLE" -> RECTANGLE;
+            case "CIRCLE" -> CIRCLE;
+            case "GROUP" -> GROUP;
+            case "POLYGON" -> POLYGON;
+            case "POLYLINE" -> POLYLINE;
+            case "IMAGE" -> IMAGE;
+            case "TEXT" -> TEXT;
+            default -> throw new IllegalArgumentException("Unknown shape type: " + name);
+        };
+    }
+
+    /**
+     * The fields that make up a shape's content, ignoring selection:
+     * type, x, y, width, height, ARGB color. For a group the width and
+     * height are its child count and a hash of its children; for a
+     * polygon or polyline, its vertex count and a hash of its vertices;
+     * for an image, in place of the color, a hash of its path; for a
+     * text label, its font size and a hash of its text.
+     * @param shape
+     * @return
+     */
+    static int[] fields(IShape shape) {
+        Point p = shape.getAnchorPoint();
+        int argb = shape.getColor().getRGB();
+        if (shape instanceof Group g) {
+            long h = 0;
+            for (int i = 0; i < g.size(); i++) {
+                h = h * 31 + contentHash(g.child(i));
+            }
+            return new int[] {GROUP, p.x, p.y, g.size(), (int) (h ^ (h >>> 32)), argb};
+        } else if (shape instanceof ImageShape im) {
+            return new int[] {IMAGE, p.x, p.y, im.getWidth(), im.getHeight(), im.getPath().hashCode()};
+        } else if (shape instanceof Polyline pl) {
+            int[] xy = pl.localVertices();
+            return new int[] {pl instanceof Polygon ? POLYGON : POLYLINE, p.x, p.y, xy.length / 2, vertexHash(xy), argb};
+        } else if (shape instanceof TextLabel tl) {
+            return new int[] {TEXT, p.x, p.y, tl.getSize(), tl.getText().hashCode(), argb};
+        } else if (shape instanceof Square sq) {
+            return new int[] {SQUARE, p.x, p.y, sq.getWidth(), sq.getWidth(), argb};
+        } else if (shape instanceof Rectangle rt) {
+            return new int[] {RECTANGLE, p.x, p.y, rt.getWidth(), rt.getHeight(), argb};
+        } else if (shape instanceof Circle cr) {
+            return new int[] {CIRCLE, p.x, p.y, cr.getDiameter(), cr.getDiameter(), argb};
+        }
+        throw new UnsupportedOperationException("Can't encode shape: " + shape);
+    }
+
+    /// the vertex hash in a polygon's or polyline's fields
+    static int vertexHash(int[] xy) {
+        long h = hash(xy);
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Build a shape (unselected) from the fields returned by fields().
+     * @param f
+     * @return
+     */
+    static IShape fromFields(int[] f) {
+        Color color = Palette.color(f[5]);
+        return switch (f[0]) {
+            case SQUARE -> new Square(color, f[1], f[2], f[3]);
+            case RECTANGLE -> new Rectangle(new Point(f[1], f[2]), f[3], f[4], color);
+            case CIRCLE -> new Circle(color, new Point(f[1], f[2]), f[3]);
+            // a group's, polygon's, image's or label's fields don't hold all of it
+            default -> throw new IllegalArgumentException("Can't build shape type: " + f[0]);
+        };
+    }
+
+    /**
+     * 64-bit hash of a shape's content (not its selection).
+     * Equal content always gives an equal hash.
+     * @param shape
+     * @return
+     */
+    static long contentHash(IShape shape) {
+        return hash(fields(shape));
+    }
+
+    static long hash(int[] fields) {
+        long h = 0xcbf29ce484222325L;
+        for (int f : fields) {
+            h = (h ^ f) * 0x100000001b3L;
+            h ^= h >>> 29;
+        }
+        return h;
+    }
+
+    /**
+     * Do the two shapes have the same type, position, size and color?
+     * Where the fields only hold a hash, which two different shapes can
+     * share, the real thing is compared too.
+     */
+    static boolean sameContent(IShape a, IShape b) {
+        if (!Arrays.equals(fields(a), fields(b))) {
+            return false;
+        }
+        if (a instanceof Polyline pa) {
+            return Arrays.equals(pa.localVertices(), ((Polyline) b).localVertices());
+        } else if (a instanceof ImageShape im) {
+            return im.getPath().equals(((ImageShape) b).getPath());
+        } else if (a instanceof TextLabel tl) {
+            return tl.getText().equals(((TextLabel) b).getText());
+        } else if (a instanceof Group ga) {
+            Group gb = (Group) b;
+            for (int i = 0; i < ga.size(); i++) {
+                if (!sameContent(ga.child(i), gb.child(i))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
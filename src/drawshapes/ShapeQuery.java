@@ -0,0 +1,442 @@
+package drawshapes;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A condition on shapes, for selecting every shape that matches (see
+ * Scene.selectWhere()).
+ *
+ * Conditions are built from the static methods here and combined with
+ * and(), or() and not(), or parsed from text such as
+ *
+ *     type = CIRCLE and (color = RED or diameter > 50)
+ *     inside 0 0 400 300 and not type = TEXT
+ *
+ * Type, color and region conditions can be answered from an index
+ * instead of testing every shape; when one of them has to hold for the
+ * whole query to hold (it's one of the terms of the top-level and),
+ * terms() hands it to the planner.
+ */
+public abstract class ShapeQuery
+{
+    /// numbers a shape can be compared on
+    public enum Attribute { X, Y, WIDTH, HEIGHT, DIAMETER }
+
+    /**
+     * Does the shape match?
+     * @param s
+     * @return
+     */
+    public abstract boolean test(IShape s);
+
+    /// the conditions that all have to hold for this one to hold
+    List<ShapeQuery> terms()
+    {
+        return List.of(this);
+    }
+
+    public ShapeQuery and(ShapeQuery other)
+    {
+        return new And(this, other);
+    }
+
+    public ShapeQuery or(ShapeQuery other)
+    {
+        return new Or(this, other);
+    }
+
+    public static ShapeQuery not(ShapeQuery q)
+    {
+        return new Not(q);
+    }
+
+    /**
+     * Shapes of the given type, named as in the scene file (CIRCLE, GROUP, ...).
+     * @param name
+     * @return
+     */
+    public static ShapeQuery type(String name)
+    {
+        return new TypeIs(ShapeCodec.type(name.toUpperCase(Locale.ROOT)), name.toUpperCase(Locale.ROOT));
+    }
+
+    public static ShapeQuery color(Color color)
+    {
+        return new ColorIs(color.getRGB());
+    }
+
+    /// shapes whose bounding box is entirely inside the given one
+    public static ShapeQuery inside(int left, int top, int right, int bottom)
+    {
+        return new Inside(left, top, right, bottom);
+    }
+
+    /**
+     * Shapes whose attribute compares to the value with the given
+     * operator: one of &lt; &lt;= &gt; &gt;= = !=.
+     */
+    public static ShapeQuery compare(Attribute attribute, String op, int value)
+    {
+        return new Compare(attribute, op, value);
+    }
+
+    /**
+     * The attribute of a shape: its anchor point, the size of its
+     * bounding box, or its diameter, which for anything but a circle
+     * is the larger side of its bounding box.
+     */
+    static int attribute(IShape s, Attribute a)
+    {
+        BoundingBox b = s.getBoundingBox();
+        return switch (a) {
+            case X -> s.getAnchorPoint().x;
+            case Y -> s.getAnchorPoint().y;
+            case WIDTH -> b.getRight() - b.getLeft();
+            case HEIGHT -> b.getBottom() - b.getTop();
+            case DIAMETER -> s instanceof Circle c ? c.getDiameter()
+                    : Math.max(b.getRight() - b.getLeft(), b.getBottom() - b.getTop());
+        };
+    }
+
+    static final class TypeIs extends ShapeQuery
+    {
+        final byte type;
+        private final String name;
+
+        TypeIs(byte type, String name)
+        {
+            this.type = type;
+            this.name = name;
+        }
+
+        @Override
+        public boolean test(IShape s)
+        {
+            return ShapeCodec.type(s) == type;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "type = " + name;
+        }
+    }
+
+    static final class ColorIs extends ShapeQuery
+    {
+        final int argb;
+
+        ColorIs(int argb)
+        {
+            this.argb = argb;
+        }
+
+        @Override
+        public boolean test(IShape s)
+        {
+            return s.getColor().getRGB() == argb;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "color = " + Palette.toString(argb);
+        }
+    }
+
+    static final class Inside extends ShapeQuery
+    {
+        final int left, top, right, bottom;
+
+        Inside(int left, int top, int right, int bottom)
+        {
+            this.left = Math.min(left, right);
+            this.top = Math.min(top, bottom);
+            this.right = Math.max(left, right);
+            this.bottom = Math.max(top, bottom);
+        }
+
+        @Override
+        public boolean test(IShape s)
+        {
+            BoundingBox b = s.getBoundingBox();
+            return b.getLeft() >= left && b.getRight() <= right && b.getTop() >= top && b.getBottom() <= bottom;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "inside " + left + " " + top + " " + right + " " + bottom;
+        }
+    }
+
+    private static final class Compare extends ShapeQuery
+    {
+        private final Attribute attribute;
+        private final String op;
+        private final int value;
+
+        Compare(Attribute attribute, String op, int value)
+        {
+            if (!List.of("<", "<=", ">", ">=", "=", "!=").contains(op)) {
+                throw new IllegalArgumentException("Unknown comparison: " + op);
+            }
+            this.attribute = attribute;
+            this.op = op;
+            this.value = value;
+        }
+
+        @Override
+        public boolean test(IShape s)
+        {
+            int v = attribute(s, attribute);
+            return switch (op) {
+                case "<" -> v < value;
+                case "<=" -> v <= value;
+                case ">" -> v > value;
+                case ">=" -> v >= value;
+                case "=" -> v == value;
+                default -> v != value;
+            };
+        }
+
+        @Override
+        public String toString()
+        {
+            return attribute.name().toLowerCase(Locale.ROOT) + " " + op + " " + value;
+        }
+    }
+
+    private static final class And extends ShapeQuery
+    {
+        private final ShapeQuery a, b;
+
+        And(ShapeQuery a, ShapeQuery b)
+        {
+            this.a = a;
+            this.b = b;
+        }
+
+        @Override
+        public boolean test(IShape s)
+        {
+            return a.test(s) && b.test(s);
+        }
+
+        @Override
+        List<ShapeQuery> terms()
+        {
+            List<ShapeQuery> terms = new ArrayList<>(a.terms());
+            terms.addAll(b.terms());
+            return terms;
+        }
+
+        @Override
+        public String toString()
+        {
+            return a + " and " + b;
+        }
+    }
+
+    private static final class Or extends ShapeQuery
+    {
+        private final ShapeQuery a, b;
+
+        Or(ShapeQuery a, ShapeQuery b)
+        {
+            this.a = a;
+            this.b = b;
+        }
+
+        @Override
+        public boolean test(IShape s)
+        {
+            return a.test(s) || b.test(s);
+        }
+
+        @Override
+        public String toString()
+        {
+            return "(" + a + " or " + b + ")";
+        }
+    }
+
+    private static final class Not extends ShapeQuery
+    {
+        private final ShapeQuery q;
+
+        Not(ShapeQuery q)
+        {
+            this.q = q;
+        }
+
+        @Override
+        public boolean test(IShape s)
+        {
+            return !q.test(s);
+        }
+
+        @Override
+        public String toString()
+        {
+            return "not (" + q + ")";
+        }
+    }
+
+    /**
+     * Parse a query: conditions joined by and / or (and binding tighter),
+     * negated with not and grouped with parentheses. A condition is one of
+     *
+     *     type = CIRCLE
+     *     color = RED            (any color the scene format accepts)
+     *     inside left top right bottom
+     *     x|y|width|height|diameter  &lt; &lt;= &gt; &gt;= = !=  number
+     *
+     * @param text
+     * @return
+     * @throws IllegalArgumentException if the text isn't a query
+     */
+    public static ShapeQuery parse(String text)
+    {
+        Parser p = new Parser(text);
+        ShapeQuery q = p.or();
+        if (p.pos < p.words.size()) {
+            throw new IllegalArgumentException("Unexpected '" + p.words.get(p.pos) + "'");
+        }
+        return q;
+    }
+
+    private static final class Parser
+    {
+        final List<String> words = new ArrayList<>();
+        int pos;
+
+        Parser(String text)
+        {
+            // split into words, with ( ) and the operators as words of their own
+            StringBuilder w = new StringBuilder();
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (Character.isWhitespace(c) || c == '(' || c == ')' || c == '<' || c == '>' || c == '=' || c == '!') {
+                    flush(w);
+                    if (c == '(' || c == ')') {
+                        words.add(String.valueOf(c));
+                    } else if (!Character.isWhitespace(c)) {
+                        boolean eq = c != '=' && i + 1 < text.length() && text.charAt(i + 1) == '=';
+                        words.add(eq ? c + "=" : String.valueOf(c));
+                        if (eq) {
+                            i++;
+                        }
+                    }
+                } else {
+                    w.append(c);
+                }
+            }
+            flush(w);
+        }
+
+        private void flush(StringBuilder w)
+        {
+            if (w.length() > 0) {
+                words.add(w.toString());
+                w.setLength(0);
+            }
+        }
+
+        private String next()
+        {
+            if (pos >= words.size()) {
+                throw new IllegalArgumentException("Query ends too soon");
+            }
+            return words.get(pos++);
+        }
+
+        private boolean accept(String word)
+        {
+            if (pos < words.size() && words.get(pos).equalsIgnoreCase(word)) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(String word)
+        {
+            String w = next();
+            if (!w.equalsIgnoreCase(word)) {
+                throw new IllegalArgumentException("Expected '" + word + "' but got '" + w + "'");
+            }
+        }
+
+        private int number()
+        {
+            String w = next();
+            try {
+                return Integer.parseInt(w);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Expected a number but got '" + w + "'");
+            }
+        }
+
+        ShapeQuery or()
+        {
+            ShapeQuery q = and();
+            while (accept("or")) {
+                q = q.or(and());
+            }
+            return q;
+        }
+
+        ShapeQuery and()
+        {
+            ShapeQuery q = unary();
+            while (accept("and")) {
+                q = q.and(unary());
+            }
+            return q;
+        }
+
+        ShapeQuery unary()
+        {
+            if (accept("not")) {
+                return not(unary());
+            }
+            if (accept("(")) {
+                ShapeQuery q = or();
+                expect(")");
+                return q;
+            }
+            String word = next().toLowerCase(Locale.ROOT);
+            switch (word) {
+                case "type" -> {
+                    expect("=");
+                    return type(next());
+                }
+                case "color" -> {
+                    expect("=");
+                    String name = next();
+                    try {
+                        return color(Palette.parse(name));
+                    } catch (UnsupportedOperationException e) {
+                        throw new IllegalArgumentException("Unknown color: " + name);
+                    }
+                }
+                case "inside" -> {
+                    return inside(number(), number(), number(), number());
+                }
+                default -> {
+                    Attribute a;
+                    try {
+                        a = Attribute.valueOf(word.toUpperCase(Locale.ROOT));
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException("Unknown condition: " + word);
+                    }
+                    return compare(a, next(), number());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package drawshapes;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.function.Predicate;
+
+/**
+ * Immutable list of shapes, used by Scene as its published state.
+ *
+ * Shapes are stored in fixed-size chunks. Changing a vector never
+ * touches it; a Builder copies the small array of chunk pointers and
+ * then only the chunks it actually writes to, sharing every other chunk
+ * with the vector it started from. Appending one shape or replacing a
+ * few shapes is therefore cheap, and an old vector stays valid (and
+ * unchanged) for as long as anyone holds on to it.
+ *
+ * Each vector carries the version of the Scene that published it.
+ */
+public final class ShapeVector extends AbstractList<IShape> implements RandomAccess
+{
+    private static final int SHIFT = 5;
+    private static final int CHUNK = 1 << SHIFT;
+    private static final int MASK = CHUNK - 1;
+
+    public static final ShapeVector EMPTY = new ShapeVector(new IShape[0][], 0, 0);
+
+    private final IShape[][] chunks;
+    private final int size;
+    private final long version;
+
+    private ShapeVector(IShape[][] chunks, int size, long version)
+    {
+        this.chunks = chunks;
+        this.size = size;
+        this.version = version;
+    }
+
+    @Override
+    public IShape get(int index)
+    {
+        Objects.checkIndex(index, size);
+        return chunks[index >>> SHIFT][index & MASK];
+    }
+
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * The Scene version this vector was published as.
+     * @return
+     */
+    public long version()
+    {
+        return version;
+    }
+
+    /**
+     * The same shapes, published under another version. O(1).
+     * @param version
+     * @return
+     */
+    ShapeVector withVersion(long version)
+    {
+        return new ShapeVector(chunks, size, version);
+    }
+
+    /**
+     * Return a new vector without the shapes matching the given predicate.
+     * @param remove
+     * @param version
+     * @return
+     */
+    ShapeVector without(Predicate<IShape> remove, long version)
+    {
+        Builder b = new Builder(EMPTY);
+        b.ensureCapacity(size);
+        for (int i = 0; i < size; i++) {
+            IShape s = get(i);
+            if (!remove.test(s)) {
+                b.add(s);
+            }
+        }
+        return b.build(version);
+    }
+
+    /**
+     * Start building a new vector from this one.
+     * @return
+     */
+    Builder builder()
+    {
+        return new Builder(this);
+    }
+
+    /**
+     * Mutable, single-threaded builder for a ShapeVector. Chunks are shared
+     * with the base vector until they are first written to.
+     */
+    static final class Builder
+    {
+        private IShape[][] chunks;
+        private boolean[] owned;
+        private int size;
+
+        Builder(ShapeVector base)
+        {
+            this.chunks = base.chunks.clone();
+            this.owned = new boolean[chunks.length];
+            this.size = base.size;
+        }
+
+        int size()
+        {
+            return size;
+        }
+
+        IShape get(int index)
+        {
+            Objects.checkIndex(index, size);
+            return chunks[index >>> SHIFT][index & MASK];
+        }
+
+        Builder set(int index, IShape s)
+        {
+            Objects.checkIndex(index, size);
+            own(index >>> SHIFT)[index & MASK] = s;
+            return this;
+        }
+
+        Builder add(IShape s)
+        {
+            int c = size >>> SHIFT;
+            if (c == chunks.length) {
+                grow(c + 1);
+            }
+            if (chunks[c] == null) {
+                chunks[c] = new IShape[CHUNK];
+                owned[c] = true;
+            }
+            own(c)[size & MASK] = s;
+            size++;
+            return this;
+        }
+
+        /// drop every shape; chunks shared with other vectors are left alone
+        Builder clear()
+        {
+            chunks = new IShape[0][];
+            owned = new boolean[0];
+            size = 0;
+            return this;
+        }
+
+        /// make room for n shapes in total, so adding many doesn't regrow the chunk table
+        Builder ensureCapacity(int n)
+        {
+            int needed = (n + MASK) >>> SHIFT;
+            if (needed > chunks.length) {
+                grow(needed);
+            }
+            return this;
+        }
+
+        /**
+         * Publish the shapes added so far as an immutable vector. The
+         * builder can keep being used; anything it writes afterwards goes
+         * into fresh copies of the chunks.
+         * @param version
+         * @return
+         */
+        ShapeVector build(long version)
+        {
+            int used = (size + MASK) >>> SHIFT;
+            ShapeVector v = new ShapeVector(Arrays.copyOf(chunks, used), size, version);
+            Arrays.fill(owned, false);
+            return v;
+        }
+
+        private IShape[] own(int c)
+        {
+            if (!owned[c]) {
+                chunks[c] = chunks[c].clone();
+                owned[c] = true;
+            }
+            return chunks[c];
+        }
+
+        private void grow(int minChunks)
+        {
+            int n = Math.max(minChunks, chunks.length + (chunks.length >> 1) + 1);
+            chunks = Arrays.copyOf(chunks, n);
+            owned = Arrays.copyOf(owned, n);
+        }
+    }
+}
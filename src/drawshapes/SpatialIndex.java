@@ -0,0 +1,316 @@
+package drawshapes;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * Immutable R-tree over the bounding boxes of a list of shapes, built in
+ * one pass by sort-tile-recursive (STR) packing.
+ *
+ * STR sorts the boxes by x, cuts them into vertical slices, sorts each
+ * slice by y and packs runs of NODE boxes into leaves; the leaves are
+ * packed the same way into the level above, and so on. Every node is
+ * full and neighbouring boxes end up in the same node, so building is
+ * O(n log n) with no per-insert cost, and a search only visits the nodes
+ * whose boxes overlap what it is looking for.
+ *
+ * The boxes are copied when the index is built. Scene never changes a
+ * published shape's geometry (edits replace shapes), so an index stays
+ * valid for the ShapeVector it was built from; Scene rebuilds it when the
+ * version changes. Searches report positions in that list.
+ */
+public final class SpatialIndex
+{
+    /// children per node
+    private static final int NODE = 16;
+
+    private final long version;
+    private final int size;
+    /// per level, 4 ints (left, top, right, bottom) per entry; level 0 is the shapes
+    private final int[][] boxes;
+    /// per level above 0, each node's children in the level below
+    private final int[][] first;
+    private final int[][] last;
+    /// list position of each level 0 entry
+    private final int[] ids;
+
+    private SpatialIndex(long version, int size, int[][] boxes, int[][] first, int[][] last, int[] ids)
+    {
+        this.version = version;
+        this.size = size;
+        this.boxes = boxes;
+        this.first = first;
+        this.last = last;
+        this.ids = ids;
+    }
+
+    /**
+     * Bulk load an index for the given shapes.
+     * @param shapes
+     * @return
+     */
+    public static SpatialIndex build(List<IShape> shapes)
+    {
+        int n = shapes.size();
+        int[] box = new int[n * 4];
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            BoundingBox b = shapes.get(i).getBoundingBox();
+            box[i * 4] = b.getLeft();
+            box[i * 4 + 1] = b.getTop();
+            box[i * 4 + 2] = b.getRight();
+            box[i * 4 + 3] = b.getBottom();
+            order[i] = i;
+        }
+        long version = shapes instanceof ShapeVector ? ((ShapeVector) shapes).version() : 0;
+
+        int levels = 1;
+        for (int count = n; count > NODE; count = (count + NODE - 1) / NODE) {
+            levels++;
+        }
+        int[][] boxes = new int[levels + 1][];
+        int[][] first = new int[levels + 1][];
+        int[][] last = new int[levels + 1][];
+
+        // level 0: the shapes, in STR order
+        tile(box, order, n);
+        boxes[0] = permute(box, order, n);
+        int[] ids = order;
+
+        // each level packs consecutive runs of NODE entries from the one below
+        for (int level = 1; level <= levels; level++) {
+            int below = boxes[level - 1].length / 4;
+            int count = (below + NODE - 1) / NODE;
+            int[] nodeBox = new int[count * 4];
+            int[] from = new int[count];
+            int[] to = new int[count];
+            for (int k = 0; k < count; k++) {
+                from[k] = k * NODE;
+                to[k] = Math.min(below, from[k] + NODE);
+                union(boxes[level - 1], from[k], to[k], nodeBox, k);
+            }
+            if (level < levels) {
+                // tile the nodes too, carrying their child ranges along
+                int[] nodeOrder = new int[count];
+                for (int k = 0; k < count; k++) {
+                    nodeOrder[k] = k;
+                }
+                tile(nodeBox, nodeOrder, count);
+                nodeBox = permute(nodeBox, nodeOrder, count);
+                int[] f = new int[count];
+                int[] t = new int[count];
+                for (int k = 0; k < count; k++) {
+                    f[k] = from[nodeOrder[k]];
+                    t[k] = to[nodeOrder[k]];
+                }
+                from = f;
+                to = t;
+            }
+            boxes[level] = nodeBox;
+            first[level] = from;
+            last[level] = to;
+        }
+        return new SpatialIndex(version, n, boxes, first, last, ids);
+    }
+
+    /// sort order[0..n) into STR order: slices by center x, then by center y within a slice
+    private static void tile(int[] box, int[] order, int n)
+    {
+        if (n <= NODE) {
+            return;
+        }
+        sortBy(order, 0, n, box, 0);
+        int nodes = (n + NODE - 1) / NODE;
+        int slices = (int) Math.ceil(Math.sqrt(nodes));
+        int perSlice = slices * NODE;
+        for (int start = 0; start < n; start += perSlice) {
+            sortBy(order, start, Math.min(n, start + perSlice), box, 1);
+        }
+    }
+
+    /// sort order[from..to) by the center of the boxes on one axis (0 = x, 1 = y)
+    private static void sortBy(int[] order, int from, int to, int[] box, int axis)
+    {
+        // pack (center, position) into longs so a primitive sort does the work
+        long[] keys = new long[to - from];
+        for (int i = from; i < to; i++) {
+            int b = order[i] * 4;
+            long center = (long) box[b + axis] + box[b + axis + 2];
+            keys[i - from] = (center << 32) | order[i];
+        }
+        Arrays.sort(keys);
+        for (int i = from; i < to; i++) {
+            order[i] = (int) keys[i - from];
+        }
+    }
+
+    private static int[] permute(int[] box, int[] order, int n)
+    {
+        int[] result = new int[n * 4];
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(box, order[i] * 4, result, i * 4, 4);
+        }
+        return result;
+    }
+
+    private static void union(int[] box, int from, int to, int[] out, int k)
+    {
+        int left = Integer.MAX_VALUE;
+        int top = Integer.MAX_VALUE;
+        int right = Integer.MIN_VALUE;
+        int bottom = Integer.MIN_VALUE;
+        for (int i = from; i < to; i++) {
+            left = Math.min(left, box[i * 4]);
+            top = Math.min(top, box[i * 4 + 1]);
+            right = Math.max(right, box[i * 4 + 2]);
+            bottom = Math.max(bottom, box[i * 4 + 3]);
+        }
+        out[k * 4] = left;
+        out[k * 4 + 1] = top;
+        out[k * 4 + 2] = right;
+        out[k * 4 + 3] = bottom;
+    }
+
+    /**
+     * The version of the ShapeVector this index was built from.
+     * @return
+     */
+    public long version()
+    {
+        return version;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Report every shape whose bounding box overlaps the given box (edges
+     * included), by its position in the list the index was built from.
+     * Positions come in no particular order.
+     * @param left
+     * @param top
+     * @param right
+     * @param bottom
+     * @param hit
+     */
+    public void search(int left, int top, int right, int bottom, IntConsumer hit)
+    {
+        int topLevel = boxes.length - 1;
+        int[] root = boxes[topLevel];
+        for (int k = 0; k < root.length / 4; k++) {
+            search(topLevel, k, left, top, right, bottom, hit);
+        }
+    }
+
+    private void search(int level, int k, int left, int top, int right, int bottom, IntConsumer hit)
+    {
+        int[] box = boxes[level];
+        int b = k * 4;
+        if (box[b] > right || box[b + 2] < left || box[b + 1] > bottom || box[b + 3] < top) {
+            return;
+        }
+        if (level == 0) {
+            hit.accept(ids[k]);
+            return;
+        }
+        for (int c = first[level][k]; c < last[level][k]; c++) {
+            search(level - 1, c, left, top, right, bottom, hit);
+        }
+    }
+
+    /**
+     * Report every shape whose bounding box contains the point.
+     * @param x
+     * @param y
+     * @param hit
+     */
+    public void search(int x, int y, IntConsumer hit)
+    {
+        search(x, y, x, y, hit);
+    }
+
+    /**
+     * Find the k shapes whose bounding boxes are nearest to the point,
+     * nearest first (a shape whose box contains the point is at distance
+     * 0). Best-first search: nodes are visited in order of their distance,
+     * so only the part of the tree near the point is looked at.
+     * @param x
+     * @param y
+     * @param k
+     * @param out receives the positions of the shapes
+     */
+    public void nearest(int x, int y, int k, IntList out)
+    {
+        // heap of (squared distance << 32 | level << 27 | entry)
+        long[] heap = new long[64];
+        int size = 0;
+        int topLevel = boxes.length - 1;
+        for (int e = 0; e < boxes[topLevel].length / 4; e++) {
+            heap = push(heap, size++, key(topLevel, e, x, y));
+        }
+        int found = 0;
+        while (size > 0 && found < k) {
+            long min = heap[0];
+            heap[0] = heap[--size];
+            siftDown(heap, size);
+            int code = (int) min;
+            int level = code >>> 27;
+            int e = code & ((1 << 27) - 1);
+            if (level == 0) {
+                out.add(ids[e]);
+                found++;
+                continue;
+            }
+            for (int c = first[level][e]; c < last[level][e]; c++) {
+                heap = push(heap, size++, key(level - 1, c, x, y));
+            }
+        }
+    }
+
+    private long key(int level, int e, int x, int y)
+    {
+        int[] box = boxes[level];
+        long dx = Math.max(0, Math.max(box[e * 4] - x, x - box[e * 4 + 2]));
+        long dy = Math.max(0, Math.max(box[e * 4 + 1] - y, y - box[e * 4 + 3]));
+        long d = Math.min(Integer.MAX_VALUE, dx * dx + dy * dy);
+        return (d << 32) | ((long) level << 27) | e;
+    }
+
+    private static long[] push(long[] heap, int size, long key)
+    {
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, size * 2);
+        }
+        int i = size;
+        while (i > 0 && heap[(i - 1) / 2] > key) {
+            heap[i] = heap[(i - 1) / 2];
+            i = (i - 1) / 2;
+        }
+        heap[i] = key;
+        return heap;
+    }
+
+    private static void siftDown(long[] heap, int size)
+    {
+        int i = 0;
+        long key = heap[0];
+        while (true) {
+            int c = 2 * i + 1;
+            if (c >= size) {
+                break;
+            }
+            if (c + 1 < size && heap[c + 1] < heap[c]) {
+                c++;
+            }
+            if (heap[c] >= key) {
+                break;
+            }
+            heap[i] = heap[c];
+            i = c;
+        }
+        heap[i] = key;
+    }
+}
@@ -19,4 +19,10 @@ public class Square extends Rectangle
                 Util.colorToString(getColor()),
                 selected);
     }
+
+    @Override
+    public IShape copy()
+    {
+        return new Square(color, anchorPoint.x, anchorPoint.y, width);
+    }
 }
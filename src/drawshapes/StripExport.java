@@ -0,0 +1,261 @@
+package drawshapes;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Exports a scene as a PNG of any size, at a small fixed memory cost.
+ *
+ * The image is drawn one horizontal strip at a time into a single
+ * reused strip buffer, and each strip's rows are compressed and written
+ * to the file before the next strip is drawn. Peak memory is one strip
+ * (width x strip height pixels) plus the scene, however tall the output.
+ *
+ * Shapes are sorted by the top of their BoundingBox once; sweeping down
+ * the strips then only draws the shapes overlapping the current strip.
+ *
+ * <pre>
+ *   java drawshapes.StripExport in.scene out.png width height [scale]
+ * </pre>
+ */
+public class StripExport
+{
+    /// pixels per strip, if not given; 16 MB of strip buffer
+    private static final int STRIP_PIXELS = 1 << 22;
+
+    private final int width;
+    private final int height;
+    private final double scale;
+    private final int stripHeight;
+
+    /**
+     * @param width output width in pixels
+     * @param height output height in pixels
+     * @param scale output pixels per scene unit
+     * @param stripHeight rows drawn at a time
+     */
+    public StripExport(int width, int height, double scale, int stripHeight)
+    {
+        this.width = width;
+        this.height = height;
+        this.scale = scale;
+        this.stripHeight = Math.max(1, Math.min(stripHeight, height));
+    }
+
+    public StripExport(int width, int height, double scale)
+    {
+        this(width, height, scale, Math.max(1, STRIP_PIXELS / width));
+    }
+
+    /**
+     * Draw the shapes, in list order, and write the image as PNG.
+     * @param shapes
+     * @param out
+     * @throws IOException
+     */
+    public void export(List<IShape> shapes, OutputStream out) throws IOException
+    {
+        int n = shapes.size();
+        // sort by top edge, keeping the index in the low bits
+        long[] byTop = new long[n];
+        for (int i = 0; i < n; i++) {
+            byTop[i] = ((long) shapes.get(i).getBoundingBox().getTop() << 32) | i;
+        }
+        Arrays.sort(byTop);
+
+        BufferedImage strip = new BufferedImage(width, stripHeight, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) strip.getRaster().getDataBuffer()).getData();
+        PngWriter png = new PngWriter(out, width, height);
+        int[] active = new int[16];
+        int activeCount = 0;
+        int next = 0;
+
+        for (int y0 = 0; y0 < height; y0 += stripHeight) {
+            int rows = Math.min(stripHeight, height - y0);
+            // strip in scene coordinates, padded a unit for rounding
+            double top = y0 / scale - 1;
+            double bottom = (y0 + rows) / scale + 1;
+
+            // shapes that start above the bottom of the strip join the active list
+            while (next < n && (int) (byTop[next] >> 32) <= bottom) {
+                if (activeCount == active.length) {
+                    active = Arrays.copyOf(active, activeCount * 2);
+                }
+                active[activeCount++] = (int) byTop[next++];
+            }
+            // shapes that end above the strip are done for good
+            int kept = 0;
+            for (int k = 0; k < activeCount; k++) {
+                if (shapes.get(active[k]).getBoundingBox().getBottom() >= top) {
+                    active[kept++] = active[k];
+                }
+            }
+            activeCount = kept;
+            // draw in list order so overlaps come out as on screen
+            Arrays.sort(active, 0, activeCount);
+
+            Graphics2D g = strip.createGraphics();
+            // no later frame, so images are decoded before they're drawn
+            g.setRenderingHint(ImageCache.WAIT_FOR_IMAGES, Boolean.TRUE);
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, width, stripHeight);
+            g.translate(0, -y0);
+            g.scale(scale, scale);
+            for (int k = 0; k < activeCount; k++) {
+                shapes.get(active[k]).draw(g);
+            }
+            g.dispose();
+
+            for (int row = 0; row < rows; row++) {
+                png.writeRow(pixels, row * width);
+            }
+        }
+        png.finish();
+    }
+
+    public void export(List<IShape> shapes, File file) throws IOException
+    {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16)) {
+            export(shapes, out);
+        }
+    }
+
+    /**
+     * Minimal streaming PNG encoder: 8-bit RGB, no filtering, rows
+     * written one at a time and deflated into a sequence of IDAT chunks.
+     */
+    static class PngWriter
+    {
+        private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+        private static final int CHUNK = 1 << 16;
+
+        private final DataOutputStream out;
+        private final byte[] row;
+        private final DeflaterOutputStream deflater;
+        private final Deflater def = new Deflater(Deflater.BEST_SPEED);
+
+        PngWriter(OutputStream out, int width, int height) throws IOException
+        {
+            this.out = new DataOutputStream(out);
+            this.row = new byte[1 + width * 3];
+            this.out.write(SIGNATURE);
+            byte[] header = new byte[13];
+            putInt(header, 0, width);
+            putInt(header, 4, height);
+            header[8] = 8; // bits per sample
+            header[9] = 2; // RGB
+            chunk("IHDR", header, header.length);
+            // deflate straight into IDAT chunks
+            this.deflater = new DeflaterOutputStream(new OutputStream() {
+                private final byte[] buf = new byte[CHUNK];
+                private int len;
+
+                @Override
+                public void write(int b) throws IOException {
+                    write(new byte[] {(byte) b}, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int n) throws IOException {
+                    while (n > 0) {
+                        int m = Math.min(n, CHUNK - len);
+                        System.arraycopy(b, off, buf, len, m);
+                        len += m;
+                        off += m;
+                        n -= m;
+                        if (len == CHUNK) {
+                            flush();
+                        }
+                    }
+                }
+
+                @Override
+                public void flush() throws IOException {
+                    if (len > 0) {
+                        chunk("IDAT", buf, len);
+                        len = 0;
+                    }
+                }
+            }, def, CHUNK);
+        }
+
+        /// write one row of packed RGB pixels
+        void writeRow(int[] pixels, int offset) throws IOException
+        {
+            row[0] = 0; // no filter
+            for (int i = 0, j = 1; i < row.length / 3; i++) {
+                int p = pixels[offset + i];
+                row[j++] = (byte) (p >> 16);
+                row[j++] = (byte) (p >> 8);
+                row[j++] = (byte) p;
+            }
+            deflater.write(row);
+        }
+
+        void finish() throws IOException
+        {
+            deflater.finish();
+            deflater.flush();
+            def.end();
+            chunk("IEND", new byte[0], 0);
+            out.flush();
+        }
+
+        private void chunk(String type, byte[] data, int len) throws IOException
+        {
+            byte[] t = type.getBytes(StandardCharsets.US_ASCII);
+            CRC32 crc = new CRC32();
+            crc.update(t);
+            crc.update(data, 0, len);
+            out.writeInt(len);
+            out.write(t);
+            out.write(data, 0, len);
+            out.writeInt((int) crc.getValue());
+        }
+
+        private static void putInt(byte[] b, int off, int v)
+        {
+            b[off] = (byte) (v >>> 24);
+            b[off + 1] = (byte) (v >>> 16);
+            b[off + 2] = (byte) (v >>> 8);
+            b[off + 3] = (byte) v;
+        }
+    }
+
+    /**
+     * @param args scene file, PNG file, width, height and optionally the scale
+     */
+    public static void main(String[] args) throws IOException
+    {
+        System.setProperty("java.awt.headless", "true");
+        if (args.length < 4) {
+            System.out.println("usage: StripExport in.scene out.png width height [scale]");
+            System.exit(2);
+        }
+        ShapeVector shapes;
+        try (SceneReader reader = new SceneReader(new File(args[0]))) {
+            shapes = reader.readAll();
+        }
+        int width = Integer.parseInt(args[2]);
+        int height = Integer.parseInt(args[3]);
+        double scale = args.length > 4 ? Double.parseDouble(args[4]) : 1;
+        long start = System.nanoTime();
+        new StripExport(width, height, scale).export(shapes, new File(args[1]));
+        System.out.printf("exported %d shapes to %dx%d %s in %.1f s\n",
+                shapes.size(), width, height, args[1], (System.nanoTime() - start) / 1e9);
+    }
+}
@@ -0,0 +1,164 @@
+package drawshapes;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Renderer that writes SVG elements to a Writer as it goes.
+ * 
+ * Call begin() before drawing anything and end() afterwards. Nothing
+ * is kept in memory besides the current fill color, so the writer
+ * should be buffered.
+ *
+ * Consecutive shapes with the same fill go into one {@code <g>} that
+ * carries the fill, so a run of same-colored shapes doesn't repeat it
+ * on every element. Only consecutive shapes are grouped, which keeps
+ * the stacking order of the scene.
+ */
+public class SvgRenderer implements Renderer
+{
+    private final Writer out;
+    private int argb;
+    private String fill = "#000000";
+    private String opacity = "";
+    private boolean inGroup;
+
+    public SvgRenderer(Writer out)
+    {
+        this.out = out;
+    }
+
+    public void begin(int width, int height)
+    {
+        write(String.format("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"%d\" height=\"%d\">%n", width, height));
+    }
+
+    public void end()
+    {
+        closeGroup();
+        write("</svg>\n");
+    }
+
+    /**
+     * Write the shapes as a complete SVG document, one element at a time.
+     * @param shapes
+     * @param out
+     * @param width
+     * @param height
+     */
+    public static void export(List<IShape> shapes, Writer out, int width, int height)
+    {
+        SvgRenderer svg = new SvgRenderer(out);
+        svg.begin(width, height);
+        for (IShape s : shapes) {
+            s.render(svg);
+        }
+        svg.end();
+    }
+
+    @Override
+    public void setColor(int argb)
+    {
+        if (inGroup && argb == this.argb) {
+            return;
+        }
+        this.argb = argb;
+        fill = toHex(argb);
+        int alpha = (argb >>> 24) & 0xff;
+        opacity = alpha == 0xff ? "" : String.format(" fill-opacity=\"%.3f\"", alpha / 255.0);
+        closeGroup();
+        write("<g fill=\"" + fill + "\"" + opacity + ">\n");
+        inGroup = true;
+    }
+
+    private void closeGroup()
+    {
+        if (inGroup) {
+            write("</g>\n");
+            inGroup = false;
+        }
+    }
+
+    @Override
+    public void fillRect(int x, int y, int width, int height)
+    {
+        write("<rect x=\"" + x + "\" y=\"" + y + "\" width=\"" + width + "\" height=\"" + height + "\"/>\n");
+    }
+
+    @Override
+    public void fillOval(int x, int y, int width, int height)
+    {
+        if (width == height) {
+            write("<circle cx=\"" + (x + width / 2.0) + "\" cy=\"" + (y + height / 2.0)
+                    + "\" r=\"" + (width / 2.0) + "\"/>\n");
+            return;
+        }
+        write("<ellipse cx=\"" + (x + width / 2.0) + "\" cy=\"" + (y + height / 2.0)
+                + "\" rx=\"" + (width / 2.0) + "\" ry=\"" + (height / 2.0) + "\"/>\n");
+    }
+
+    @Override
+    public void drawRect(int x, int y, int width, int height)
+    {
+        write("<rect x=\"" + x + "\" y=\"" + y + "\" width=\"" + width + "\" height=\"" + height
+                + "\" fill=\"none\" stroke=\"" + fill + "\"/>\n");
+    }
+
+    @Override
+    public void fillPolygon(int[] xy, int offset, int n, int dx, int dy)
+    {
+        write("<polygon points=\"" + points(xy, offset, n, dx, dy) + "\"/>\n");
+    }
+
+    @Override
+    public void drawPolyline(int[] xy, int offset, int n, int dx, int dy)
+    {
+        write("<polyline points=\"" + points(xy, offset, n, dx, dy) + "\" fill=\"none\" stroke=\"" + fill + "\"/>\n");
+    }
+
+    @Override
+    public void drawImage(int id, int x, int y, int width, int height)
+    {
+        String href = ImageCache.shared().file(id).toURI().toString().replace("&", "&amp;").replace("\"", "&quot;");
+        write("<image x=\"" + x + "\" y=\"" + y + "\" width=\"" + width + "\" height=\"" + height
+                + "\" preserveAspectRatio=\"none\" href=\"" + href + "\"/>\n");
+    }
+
+    @Override
+    public void drawGlyphs(GlyphRun run, int x, int y)
+    {
+        String text = run.getText().replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+        write("<text x=\"" + x + "\" y=\"" + y + "\" font-family=\"sans-serif\" font-size=\""
+                + run.getFont().getSize() + "\" xml:space=\"preserve\">" + text + "</text>\n");
+    }
+
+    private static String points(int[] xy, int offset, int n, int dx, int dy)
+    {
+        StringBuilder s = new StringBuilder(n * 10);
+        for (int i = 0; i < n; i++) {
+            if (i > 0) {
+                s.append(' ');
+            }
+            s.append(xy[offset + i * 2] + dx).append(',').append(xy[offset + i * 2 + 1] + dy);
+        }
+        return s.toString();
+    }
+
+    /// #rrggbb, ignoring alpha
+    static String toHex(int argb)
+    {
+        return String.format("#%06x", argb & 0xffffff);
+    }
+
+    private void write(String s)
+    {
+        try {
+            out.write(s);
+        } catch (IOException e) {
+            // Renderer methods can't throw checked exceptions
+            throw new UncheckedIOException(e);
+        }
+    }
+}
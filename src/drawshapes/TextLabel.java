@@ -0,0 +1,172 @@
+package drawshapes;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Point;
+
+/**
+ * A single line of text.
+ *
+ * The anchor point is the center of the text's box, like the other
+ * shapes. The shaped glyphs and their measured size are kept in a
+ * GlyphRun, which is only made again when the text or size changes
+ * (scaling changes the size), so drawing a label every frame never
+ * shapes it again. The bounding box comes from the same measurements,
+ * and hit tests and culling use it.
+ */
+public class TextLabel extends AbstractShape
+{
+    private String text;
+    private int size;
+    private GlyphRun run;
+
+    /**
+     * @param center
+     * @param text not empty
+     * @param size font size in pixels
+     * @param color
+     */
+    public TextLabel(Point center, String text, int size, Color color)
+    {
+        super(center);
+        if (text.isEmpty()) {
+            throw new IllegalArgumentException("Empty label");
+        }
+        this.text = text;
+        this.size = Math.max(1, size);
+        this.color = color;
+        layout(null);
+    }
+
+    /// shares the run, which never changes
+    private TextLabel(Point center, GlyphRun run, Color color)
+    {
+        super(center);
+        this.text = run.getText();
+        this.size = run.getFont().getSize();
+        this.color = color;
+        layout(run);
+    }
+
+    /// take the given run, or shape the text again if null, and fit the bounding box to it
+    private void layout(GlyphRun shaped)
+    {
+        run = shaped != null ? shaped : new GlyphRun(text, size);
+        int left = anchorPoint.x - run.getWidth() / 2;
+        int top = anchorPoint.y - run.getHeight() / 2;
+        if (boundingBox == null) {
+            setBoundingBox(left, left + run.getWidth(), top, top + run.getHeight());
+        } else {
+            boundingBox.set(left, left + run.getWidth(), top, top + run.getHeight());
+        }
+    }
+
+    public String getText()
+    {
+        return text;
+    }
+
+    public void setText(String text)
+    {
+        if (text.isEmpty()) {
+            throw new IllegalArgumentException("Empty label");
+        }
+        if (!text.equals(this.text)) {
+            this.text = text;
+            layout(null);
+            version++;
+        }
+    }
+
+    /// font size in pixels
+    public int getSize()
+    {
+        return size;
+    }
+
+    GlyphRun getRun()
+    {
+        return run;
+    }
+
+    private int baselineX()
+    {
+        return boundingBox.getLeft();
+    }
+
+    private int baselineY()
+    {
+        return boundingBox.getTop() + run.getAscent();
+    }
+
+    @Override
+    public void draw(Graphics g)
+    {
+        g.setColor(drawAwtColor());
+        if (g instanceof Graphics2D g2) {
+            g2.drawGlyphVector(run.getGlyphs(g2), baselineX(), baselineY());
+        } else {
+            g.setFont(run.getFont());
+            g.drawString(text, baselineX(), baselineY());
+        }
+    }
+
+    @Override
+    public void render(Renderer r)
+    {
+        r.setColor(drawColor());
+        r.drawGlyphs(run, baselineX(), baselineY());
+    }
+
+    @Override
+    public void setAnchorPoint(Point p)
+    {
+        move(p.x - anchorPoint.x, p.y - anchorPoint.y);
+    }
+
+    @Override
+    public void scaleUp(double scale)
+    {
+        resize(scale);
+    }
+
+    @Override
+    public void scaleDown(double scale)
+    {
+        resize(scale);
+    }
+
+    /// scale the font about the anchor; a size that rounds the same keeps the glyphs
+    private void resize(double scale)
+    {
+        int scaled = Math.max(1, (int) Math.round(size * scale));
+        if (scaled != size) {
+            size = scaled;
+            layout(null);
+            version++;
+        }
+    }
+
+    @Override
+    public IShape copy()
+    {
+        return new TextLabel(new Point(anchorPoint), run, color);
+    }
+
+    /**
+     * "TEXT x y size text color selected", with the text made one word
+     * by Util.toWord().
+     */
+    @Override
+    public String toString()
+    {
+        return String.format("TEXT %d %d %d %s %s %s",
+                anchorPoint.x,
+                anchorPoint.y,
+                size,
+                Util.toWord(text),
+                colorToString(getColor()),
+                selected);
+    }
+}
@@ -0,0 +1,69 @@
+package drawshapes;
+
+/**
+ * A scale about a pivot point followed by a translation, applied to
+ * whole shapes: each shape's center is mapped through the transform and
+ * its size is multiplied by the scale factor.
+ *
+ * Shapes are centered on their bounding box, so a group scales about its
+ * own center like any other shape.
+ */
+final class Transform
+{
+    final double factor;
+    final double pivotX;
+    final double pivotY;
+    final int dx;
+    final int dy;
+
+    Transform(double factor, double pivotX, double pivotY, int dx, int dy)
+    {
+        this.factor = factor;
+        this.pivotX = pivotX;
+        this.pivotY = pivotY;
+        this.dx = dx;
+        this.dy = dy;
+    }
+
+    static Transform translate(int dx, int dy)
+    {
+        return new Transform(1, 0, 0, dx, dy);
+    }
+
+    static Transform scale(double factor, double pivotX, double pivotY)
+    {
+        return new Transform(factor, pivotX, pivotY, 0, 0);
+    }
+
+    boolean isTranslation()
+    {
+        return factor == 1;
+    }
+
+    /**
+     * Transform the shape in place, bounding box included.
+     * @param s
+     */
+    void apply(IShape s)
+    {
+        int mx = dx;
+        int my = dy;
+        if (factor != 1) {
+            BoundingBox b = s.getBoundingBox();
+            double cx = (b.getLeft() + b.getRight()) / 2.0;
+            double cy = (b.getTop() + b.getBottom()) / 2.0;
+            mx += (int) Math.round(pivotX + (cx - pivotX) * factor - cx);
+            my += (int) Math.round(pivotY + (cy - pivotY) * factor - cy);
+            Scene.scale(s, factor);
+        }
+        if (mx != 0 || my != 0) {
+            s.move(mx, my);
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("scale %s about (%.1f, %.1f), move (%d, %d)", factor, pivotX, pivotY, dx, dy);
+    }
+}
@@ -15,26 +15,44 @@ public class Util
     // private constructor
     private Util() {}
 
+    /// see Palette.toString()
     public static String colorToString(Color color) {
-        if (color == Color.RED) {
-            return "RED";
-        } else if (color == Color.BLUE) {
-            return "BLUE";
-        }
-        else if(color == Color.YELLOW) return "YELLOW";
-        else if (color == Color.GREEN) return "GREEN";
-        
-        throw new UnsupportedOperationException("Unexpected color: "+color);
+        return Palette.toString(color);
     }
 
+    /// see Palette.parse()
     public static Color stringToColor(String color) {
-        if (color.equals("RED")) {
-            return Color.RED;
-        } else if (color.equals("BLUE")) {
-            return Color.BLUE;
-        } 
-        else if (color.equals("GREEN")) return Color.GREEN;
-        else if (color.equals("YELLOW")) return Color.YELLOW;
-        throw new UnsupportedOperationException("Unexpected color: "+color);
+        return Palette.parse(color);
+    }
+
+    /**
+     * Make a string safe to write as one word of the scene file format,
+     * by writing %, whitespace and line breaks as %25, %20, %09, %0A, %0D.
+     * @param s
+     * @return
+     */
+    public static String toWord(String s) {
+        return s.replace("%", "%25").replace(" ", "%20").replace("\t", "%09")
+                .replace("\n", "%0A").replace("\r", "%0D");
+    }
+
+    /// undo toWord()
+    public static String fromWord(String word) {
+        return word.replace("%20", " ").replace("%09", "\t").replace("%0A", "\n")
+                .replace("%0D", "\r").replace("%25", "%");
+    }
+
+    /**
+     * Same as Color.darker(), but on a packed ARGB int so nothing is allocated.
+     * @param argb
+     * @return
+     */
+    public static int darker(int argb) {
+        final double FACTOR = 0.7;
+        int a = (argb >>> 24) & 0xff;
+        int r = (int)(((argb >> 16) & 0xff) * FACTOR);
+        int g = (int)(((argb >> 8) & 0xff) * FACTOR);
+        int b = (int)((argb & 0xff) * FACTOR);
+        return (a << 24) | (r << 16) | (g << 8) | b;
     }
 }